@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -13,8 +14,17 @@ dependencies {
     implementation("com.google.code.gson:gson:2.8.9")
     testImplementation(platform("org.junit:junit-bom:5.9.1"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.xerial:sqlite-jdbc:3.45.1.0")
+    jmhRuntimeOnly("org.xerial:sqlite-jdbc:3.45.1.0")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Storage benchmarks live in src/jmh/java; run them with ./gradlew jmh
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,161 @@
+package org.example.bench;
+
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.example.storage.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Compares the storage backends on DataModel records of a given count and name length, each
+// trial working on a fresh store in a temporary directory. Run with the gc profiler
+// (configured in build.gradle.kts) to see the allocation rate next to the throughput.
+//
+// The mutating benchmarks keep the store close to its loaded size: create cycles through a
+// fixed pool of new ids and delete puts the record back after each call. That housekeeping
+// runs in per invocation fixtures, so it is not part of the measured time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class StorageBenchmark {
+    private static final EntityCodec<DataModel> CODEC = EntityCodec.of(DataModel.class, "id", "name");
+
+    @Param({"CSV", "TXT", "JSON", "SERIALIZED", "BINARY", "SQLITE"})
+    public String backend;
+
+    @Param({"1000", "100000", "1000000"})
+    public int records;
+
+    @Param({"16", "256"})
+    public int nameLength;
+
+    private Path directory;
+    private CRUD<DataModel> store;
+    private String name;
+
+    // Loads the store with one createAll, which backends that rewrite the whole file on every
+    // batch (the JSON array) handle in a single pass
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("storage-benchmark");
+        store = open(backend, directory);
+        name = "n".repeat(nameLength);
+        List<DataModel> initial = new ArrayList<>(records);
+        for (int id = 0; id < records; id++) {
+            initial.add(new DataModel(id, name));
+        }
+        store.createAll(initial);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (store instanceof AutoCloseable) {
+            ((AutoCloseable) store).close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Ids above the loaded ones, reused round robin. Once the pool wraps, the record created
+    // with the id last time is deleted before the call, so the store never holds more than
+    // records + records / 10 records.
+    @State(Scope.Thread)
+    public static class CreateSlot {
+        private int next;
+        private boolean wrapped;
+        int id;
+
+        @Setup(Level.Invocation)
+        public void pick(StorageBenchmark bench) {
+            id = bench.records + next;
+            if (wrapped) {
+                bench.store.delete(id);
+            }
+            if (++next == Math.max(1, bench.records / 10)) {
+                next = 0;
+                wrapped = true;
+            }
+        }
+    }
+
+    // A random loaded id, created again after the call
+    @State(Scope.Thread)
+    public static class DeleteSlot {
+        int id;
+
+        @Setup(Level.Invocation)
+        public void pick(StorageBenchmark bench) {
+            id = bench.randomId();
+        }
+
+        @TearDown(Level.Invocation)
+        public void restore(StorageBenchmark bench) {
+            bench.store.create(new DataModel(id, bench.name));
+        }
+    }
+
+    @Benchmark
+    public void create(CreateSlot slot) {
+        store.create(new DataModel(slot.id, name));
+    }
+
+    @Benchmark
+    public DataModel readById() {
+        return store.read(randomId());
+    }
+
+    @Benchmark
+    public void readAll(Blackhole blackhole) {
+        blackhole.consume(store.readAll());
+    }
+
+    @Benchmark
+    public void update() {
+        int id = randomId();
+        store.update(id, new DataModel(id, name));
+    }
+
+    // Only the delete is measured; DeleteSlot puts the record back
+    @Benchmark
+    public void delete(DeleteSlot slot) {
+        store.delete(slot.id);
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(records);
+    }
+
+    private static CRUD<DataModel> open(String backend, Path directory) {
+        switch (backend) {
+            case "CSV":
+                return new CSV<>(directory.resolve("bench.csv").toString(), CODEC.csvParser(), CODEC.csvFormatter());
+            case "TXT":
+                return new TXT<>(directory.resolve("bench.txt").toString(), CODEC.textSerializer(), CODEC.textDeserializer());
+            case "JSON":
+                return new JSON<>(directory.resolve("bench.json").toString(), CODEC);
+            case "SERIALIZED":
+                return new SerializedObject<>(directory.resolve("bench.ser").toString());
+            case "BINARY":
+                return new BinaryStore<>(directory.resolve("bench.bin").toString(), CODEC.binaryCodec());
+            case "SQLITE":
+                return new SQLite<>(directory.resolve("bench.db").toString(), CODEC.sqliteMapper("DataModels"));
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+    }
+}
@@ -1,50 +1,99 @@
 package org.example;
 
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
 import org.example.entity.DataModel;
+import org.example.metrics.InstrumentedCRUD;
+import org.example.metrics.StorageMetrics;
 import org.example.proxy.Proxy;
+import org.example.proxy.ProxyCache;
+import org.example.proxy.WriteBehindQueue;
+import org.example.provider.StorageRegistry;
+import org.example.service.RecordCopier;
 import org.example.storage.*;
 
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
 import java.util.Scanner;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.stream.Stream;
 
 public class Main {
 
-    private static final Map<String, CRUD<DataModel>> dataAccessMap = new HashMap<>();
-
-    static {
-        // Initialize the data access objects for each file format
-        dataAccessMap.put("CSV", new CSV<>("csv_file.csv", new DataModelCSVParser(), new DataModelCSVFormatter()));
-        dataAccessMap.put("JSON", new JSON<>("json_file.json", DataModel.class));
-        dataAccessMap.put("TXT", new TXT<>("txt_file.txt", new DataModelTextSerializer(), new DataModelTextDeserializer()));
-        dataAccessMap.put("SERIALIZED", new SerializedObject<>("serialized_file.ser"));
-        dataAccessMap.put("SQLITE", new SQLite<>("database.db", new DataModelSQLiteObjectMapper()));
-    }
+    private static final int CACHE_ENTRIES = 10_000;
+    private static final String DEFAULT_CONFIG = "storage.properties";
+    private static final String USAGE = "Usage: [--config <file>] [--set <key>=<value>]... [--format <format> [--script <file>]]";
+    // Describes DataModel once; every backend gets its mapping from here
+    private static final EntityCodec<DataModel> DATA_MODEL_CODEC = CodecRegistry.register(EntityCodec.of(DataModel.class, "id", "name"));
+    // Backends are opened on first use, so only the selected format touches its files
+    private static StorageRegistry registry;
 
     public static void main(String[] args) {
+        // Backend settings come from the config file, overridden by --set, e.g. --set csv.path=data.csv
+        String format = null;
+        String script = null;
+        Path config = Paths.get(DEFAULT_CONFIG);
+        Properties overrides = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (args[i].equals("--format") && value != null) {
+                format = value.toUpperCase();
+            } else if (args[i].equals("--script") && value != null) {
+                script = value;
+            } else if (args[i].equals("--config") && value != null) {
+                config = Paths.get(value);
+            } else if (args[i].equals("--set") && value != null && value.indexOf('=') > 0) {
+                overrides.setProperty(value.substring(0, value.indexOf('=')).trim(), value.substring(value.indexOf('=') + 1));
+            } else {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            i++;
+        }
+        try {
+            Properties properties = StorageRegistry.loadProperties(config);
+            properties.putAll(overrides);
+            registry = new StorageRegistry(properties);
+        } catch (IOException e) {
+            System.err.println("Cannot read " + config + ": " + e.getMessage());
+            System.exit(2);
+        }
+        if (format != null || script != null) {
+            runBatch(format, script);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         System.out.println("Welcome to the CLI Data Access Framework");
 
         CRUD<DataModel> dataAccess = null;
-        String format = null; // Declare 'format' outside the while loop
 
         while (dataAccess == null) {
-            System.out.println("Select data format (CSV, JSON, TXT, SERIALIZED, SQLITE):");
-            format = scanner.nextLine().toUpperCase();
-            dataAccess = dataAccessMap.get(format);
+            System.out.println("Select data format (" + String.join(", ", registry.getNames()) + "):");
+            format = scanner.nextLine().trim().toUpperCase();
+            dataAccess = openDataAccess(format);
 
             if (dataAccess == null) {
                 System.out.println("Invalid data format selected. Please try again.");
             }
         }
 
-        Proxy<DataModel> proxy = new Proxy<>(dataAccess);
+        // Calls into the backend are timed and published over JMX; STATS prints the numbers
+        StorageMetrics metrics = new StorageMetrics(format);
+        metrics.register();
+        CRUD<DataModel> instrumented = new InstrumentedCRUD<>(dataAccess, metrics, Main::estimatedSize);
+
+        // Hot records are served from a bounded cache in front of the selected backend
+        Proxy<DataModel> proxy = new Proxy<>(instrumented, new ProxyCache<>(DataModel::getId, CACHE_ENTRIES));
 
 
         while (true) {
-            System.out.println("Enter command (CREATE, READ, READALL, UPDATE, DELETE, EXIT):");
-            String command = scanner.nextLine().toUpperCase();
+            System.out.println("Enter command (CREATE, READ, READALL, QUERY, UPDATE, DELETE, COPY <from> <to>, IMPORT <from>, EXPORT <to>, STATS, EXIT):");
+            // The bulk commands take their arguments on the command line
+            String[] words = scanner.nextLine().trim().toUpperCase().split("\\s+");
+            String command = words[0];
             switch (command) {
                 case "CREATE":
                     // Assume DataModel constructor takes parameters for each field
@@ -62,8 +111,36 @@ public class Main {
                     System.out.println(readData != null ? readData : "Record not found.");
                     break;
                 case "READALL":
-                    List<DataModel> allData = proxy.readAll();
-                    allData.forEach(System.out::println);
+                    // Records are printed as they are read instead of being collected first
+                    try (Stream<DataModel> allData = proxy.stream()) {
+                        allData.forEach(System.out::println);
+                    }
+                    break;
+                case "QUERY":
+                    Query<DataModel> query = DATA_MODEL_CODEC.query();
+                    System.out.println("Enter the ID range (format: from,to), or leave empty:");
+                    String range = scanner.nextLine().trim();
+                    System.out.println("Enter a name prefix, or leave empty:");
+                    String prefix = scanner.nextLine();
+                    System.out.println("Enter the page (format: offset,limit), or leave empty:");
+                    String page = scanner.nextLine().trim();
+                    try {
+                        if (!range.isEmpty()) {
+                            String[] bounds = range.split(",");
+                            query.idBetween(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim()));
+                        }
+                        if (!prefix.isEmpty()) {
+                            query.wherePrefix("name", prefix);
+                        }
+                        if (!page.isEmpty()) {
+                            String[] paging = page.split(",");
+                            query.offset(Long.parseLong(paging[0].trim())).limit(Long.parseLong(paging[1].trim()));
+                        }
+                    } catch (RuntimeException e) {
+                        System.out.println("Invalid query: " + e.getMessage());
+                        break;
+                    }
+                    proxy.query(query).forEach(System.out::println);
                     break;
                 case "UPDATE":
                     System.out.println("Enter the ID of the record to update:");
@@ -80,8 +157,35 @@ public class Main {
                     proxy.delete(deleteId);
                     System.out.println("Record deleted.");
                     break;
+                case "COPY":
+                    if (words.length != 3) {
+                        System.out.println("Usage: COPY <from> <to>");
+                        break;
+                    }
+                    copy(words[1], words[2], format, proxy);
+                    break;
+                case "IMPORT":
+                    if (words.length != 2) {
+                        System.out.println("Usage: IMPORT <from>");
+                        break;
+                    }
+                    copy(words[1], format, format, proxy);
+                    break;
+                case "EXPORT":
+                    if (words.length != 2) {
+                        System.out.println("Usage: EXPORT <to>");
+                        break;
+                    }
+                    copy(format, words[1], format, proxy);
+                    break;
+                case "STATS":
+                    System.out.print(metrics.report());
+                    System.out.println("cache: " + proxy.getCache());
+                    break;
                 case "EXIT":
                     scanner.close();
+                    metrics.unregister();
+                    closeDataAccess();
                     System.out.println("Exiting the application.");
                     return;
                 default:
@@ -90,124 +194,201 @@ public class Main {
         }
     }
 
-    // Helper method to parse input data into a DataModel object
-    private static DataModel parseDataModel(String data) {
-        String[] fields = data.split(",");
-        // Check if the fields array has the required number of elements
-        if (fields.length < 2) {
-            // Handle error - the input data does not have enough information
-            System.out.println("Invalid data format. Please enter data as 'id,data'."); // Or handle this case as appropriate
-            return null;
+    // Non-interactive mode: --format <format> [--script <file>] runs one command per line from
+    // the script, or from stdin without --script, e.g. "CREATE 1,foo" or "UPDATE 1 1,bar".
+    // Nothing is prompted and output is written in large blocks. Mutations go through a
+    // write-behind queue, so runs of CREATE/UPDATE/DELETE lines reach the backend as batches
+    // (one transaction each on SQLite); READ sees queued writes and READALL/QUERY flush first.
+    private static void runBatch(String format, String script) {
+        CRUD<DataModel> dataAccess = format == null ? null : openDataAccess(format);
+        if (dataAccess == null) {
+            System.err.println(USAGE);
+            System.err.println("Formats: " + String.join(", ", registry.getNames()));
+            System.exit(2);
         }
-        try {
-            Integer id = Integer.parseInt(fields[0].trim()); // Convert first part to Integer
-            String name = fields[1].trim(); // Second part is the name
-            return new DataModel(id, name);
-        } catch (NumberFormatException e) {
-            // Handle error - the id is not a valid integer
-            System.out.println("Invalid ID format. ID should be an integer.");
-            return null; // Or handle this case as appropriate
-        }
-    }
 
-
-    // Placeholder implementations for parser, formatter, serializer, deserializer, and object mapper
-    private static class DataModelCSVParser implements CSV.CSVParser<DataModel> {
-        @Override
-        public DataModel parse(String line) {
-            String[] fields = line.split(",");
-            Integer id = Integer.parseInt(fields[0].trim());
-            String name = fields[1].trim();
-            return new DataModel(id, name);
-        }
-
-        @Override
-        public Integer getId(DataModel obj) {
-            return obj.getId();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false));
+        StorageMetrics metrics = new StorageMetrics(format);
+        metrics.register();
+        WriteBehindQueue<DataModel> queue = new WriteBehindQueue<>(new InstrumentedCRUD<>(dataAccess, metrics, Main::estimatedSize),
+                DataModel::getId, WriteBehindQueue.DEFAULT_MAX_PENDING, 0, WriteBehindQueue.Durability.FLUSH);
+        Proxy<DataModel> proxy = new Proxy<>(queue, new ProxyCache<>(DataModel::getId, CACHE_ENTRIES));
+        try (BufferedReader in = script != null
+                ? Files.newBufferedReader(Paths.get(script))
+                : new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    if (!runCommand(line, format, proxy, metrics)) {
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            queue.close();
+            metrics.unregister();
+            closeDataAccess();
+            System.out.flush();
+            System.setOut(console);
         }
     }
 
-
-    private static class DataModelCSVFormatter implements CSV.CSVFormatter<DataModel> {
-        @Override
-        public String format(DataModel obj) {
-            return obj.getId() + "," + obj.getName();
+    // Runs one batch mode command; returns false on EXIT
+    private static boolean runCommand(String line, String format, Proxy<DataModel> proxy, StorageMetrics metrics) {
+        String[] parts = line.split("\\s+", 2);
+        String command = parts[0].toUpperCase();
+        String argument = parts.length > 1 ? parts[1].trim() : "";
+        switch (command) {
+            case "CREATE": {
+                DataModel obj = parseDataModel(argument);
+                if (obj != null) {
+                    proxy.create(obj);
+                }
+                return true;
+            }
+            case "READ": {
+                DataModel obj = proxy.read(Integer.parseInt(argument));
+                System.out.println(obj != null ? obj : "Record not found.");
+                return true;
+            }
+            case "READALL":
+                try (Stream<DataModel> allData = proxy.stream()) {
+                    allData.forEach(System.out::println);
+                }
+                return true;
+            case "QUERY": {
+                // QUERY <from>,<to> [<offset>,<limit>]
+                String[] words = argument.split("\\s+");
+                String[] bounds = words[0].split(",");
+                Query<DataModel> query = DATA_MODEL_CODEC.query()
+                        .idBetween(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim()));
+                if (words.length > 1) {
+                    String[] paging = words[1].split(",");
+                    query.offset(Long.parseLong(paging[0].trim())).limit(Long.parseLong(paging[1].trim()));
+                }
+                proxy.query(query).forEach(System.out::println);
+                return true;
+            }
+            case "UPDATE": {
+                String[] words = argument.split("\\s+", 2);
+                DataModel obj = words.length == 2 ? parseDataModel(words[1]) : null;
+                if (obj != null) {
+                    proxy.update(Integer.parseInt(words[0]), obj);
+                } else if (words.length != 2) {
+                    System.out.println("Usage: UPDATE <id> <id>,<data>");
+                }
+                return true;
+            }
+            case "DELETE":
+                proxy.delete(Integer.parseInt(argument));
+                return true;
+            case "COPY":
+            case "IMPORT":
+            case "EXPORT": {
+                String[] words = argument.toUpperCase().split("\\s+");
+                if (command.equals("COPY") && words.length == 2) {
+                    copy(words[0], words[1], format, proxy);
+                } else if (command.equals("IMPORT") && words.length == 1) {
+                    copy(words[0], format, format, proxy);
+                } else if (command.equals("EXPORT") && words.length == 1) {
+                    copy(format, words[0], format, proxy);
+                } else {
+                    System.out.println("Usage: COPY <from> <to>, IMPORT <from> or EXPORT <to>");
+                }
+                return true;
+            }
+            case "FLUSH":
+                proxy.flush();
+                return true;
+            case "STATS":
+                proxy.flush();
+                System.out.print(metrics.report());
+                System.out.println("cache: " + proxy.getCache());
+                return true;
+            case "EXIT":
+                return false;
+            default:
+                System.out.println("Invalid command " + parts[0] + ".");
+                return true;
         }
     }
 
-
-    private static class DataModelTextSerializer implements TXT.TextSerializer<DataModel> {
-        @Override
-        public String serialize(DataModel obj) {
-            return obj.getId() + "," + obj.getName();
+    // Streams all records of one format into another. The selected format is accessed through
+    // the proxy, so its metrics and cache stay accurate.
+    private static void copy(String from, String to, String format, Proxy<DataModel> proxy) {
+        CRUD<DataModel> source = from.equals(format) ? proxy : openDataAccess(from);
+        CRUD<DataModel> target = to.equals(format) ? proxy : openDataAccess(to);
+        if (source == null || target == null) {
+            System.out.println("Unknown data format " + (source == null ? from : to) + ".");
+            return;
         }
-    }
-
-
-    private static class DataModelTextDeserializer implements TXT.TextDeserializer<DataModel> {
-        @Override
-        public DataModel deserialize(String str) {
-            String[] fields = str.split(",");
-            Integer id = Integer.parseInt(fields[0].trim());
-            String name = fields[1].trim();
-            return new DataModel(id, name);
+        if (from.equals(to)) {
+            System.out.println("Source and target are the same format.");
+            return;
         }
-
-        @Override
-        public Integer getId(DataModel obj) {
-            return obj.getId();
+        try {
+            new RecordCopier<DataModel>().copy(source, target, (records, elapsedNanos, done) -> {
+                double seconds = elapsedNanos / 1e9;
+                long rate = seconds > 0 ? Math.round(records / seconds) : records;
+                System.out.println((done ? "Copied " : "Copying... ") + records + " records from " + from + " to " + to
+                        + " in " + String.format("%.1f", seconds) + " s (" + rate + " records/s)");
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Copy interrupted.");
+        } catch (RuntimeException e) {
+            System.out.println("Copy failed: " + e.getMessage());
         }
     }
 
-
-    private static class DataModelSQLiteObjectMapper implements SQLite.SQLiteObjectMapper<DataModel> {
-        @Override
-        public String getTableCreationSQL() {
-            return "CREATE TABLE IF NOT EXISTS DataModels (id INTEGER PRIMARY KEY, name TEXT);";
-        }
-
-        @Override
-        public String getInsertSQL() {
-            return "INSERT INTO DataModels (id, name) VALUES (?, ?);";
-        }
-
-        @Override
-        public String getSelectSQL() {
-            return "SELECT * FROM DataModels WHERE id = ?;";
-        }
-
-        @Override
-        public String getSelectAllSQL() {
-            return "SELECT * FROM DataModels;";
-        }
-
-        @Override
-        public String getUpdateSQL() {
-            return "UPDATE DataModels SET name = ? WHERE id = ?;";
+    // Opens the named backend, or returns null if there is no such format or it cannot be opened
+    private static CRUD<DataModel> openDataAccess(String format) {
+        try {
+            return registry.open(format, DATA_MODEL_CODEC);
+        } catch (RuntimeException e) {
+            System.out.println("Cannot open " + format + ": " + e.getMessage());
+            return null;
         }
+    }
 
-        @Override
-        public int getUpdateIdParameterIndex() {
-            return 2; // Since ID is the second parameter in the update SQL
-        }
+    // Release pooled connections and other resources held by the backends that were opened
+    private static void closeDataAccess() {
+        registry.close();
+    }
 
-        @Override
-        public String getDeleteSQL() {
-            return "DELETE FROM DataModels WHERE id = ?;";
-        }
+    // Rough size of a record for the metrics: the id plus one byte per name character
+    private static long estimatedSize(DataModel obj) {
+        return Integer.BYTES + (obj.getName() != null ? obj.getName().length() : 0);
+    }
 
-        @Override
-        public void mapObjectToPreparedStatement(java.sql.PreparedStatement pstmt, DataModel obj) throws java.sql.SQLException {
-            pstmt.setInt(1, obj.getId());
-            pstmt.setString(2, obj.getName());
+    // Helper method to parse input data into a DataModel object
+    private static DataModel parseDataModel(String data) {
+        String[] fields = data.split(",");
+        // Check if the fields array has the required number of elements
+        if (fields.length < 2) {
+            // Handle error - the input data does not have enough information
+            System.out.println("Invalid data format. Please enter data as 'id,data'."); // Or handle this case as appropriate
+            return null;
         }
-
-        @Override
-        public DataModel mapResultSetToObject(java.sql.ResultSet rs) throws java.sql.SQLException {
-            int id = rs.getInt("id");
-            String name = rs.getString("name");
+        try {
+            Integer id = Integer.parseInt(fields[0].trim()); // Convert first part to Integer
+            String name = fields[1].trim(); // Second part is the name
             return new DataModel(id, name);
+        } catch (NumberFormatException e) {
+            // Handle error - the id is not a valid integer
+            System.out.println("Invalid ID format. ID should be an integer.");
+            return null; // Or handle this case as appropriate
         }
     }
-
-}
\ No newline at end of file
+}
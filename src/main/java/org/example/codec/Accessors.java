@@ -0,0 +1,113 @@
+package org.example.codec;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Turns getters, setters and constructors into Function/BiConsumer/Supplier instances spun by
+// LambdaMetafactory, so calling them costs the same as a hand written lambda. Members the
+// metafactory cannot bind to fall back to invoking the MethodHandle directly.
+final class Accessors {
+    private Accessors() {
+
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Function<T, Object> getter(Method method) {
+        MethodHandles.Lookup lookup = lookupFor(method.getDeclaringClass());
+        MethodHandle handle = unreflect(lookup, method);
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(boxed(method.getReturnType()), method.getDeclaringClass()));
+            return (Function<T, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            return obj -> {
+                try {
+                    return handle.invoke(obj);
+                } catch (Throwable t) {
+                    throw new IllegalStateException("Cannot call " + method, t);
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> BiConsumer<T, Object> setter(Method method) {
+        MethodHandles.Lookup lookup = lookupFor(method.getDeclaringClass());
+        MethodHandle handle = unreflect(lookup, method);
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(void.class, method.getDeclaringClass(), boxed(method.getParameterTypes()[0])));
+            return (BiConsumer<T, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            return (obj, value) -> {
+                try {
+                    handle.invoke(obj, value);
+                } catch (Throwable t) {
+                    throw new IllegalStateException("Cannot call " + method, t);
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> constructor(Constructor<T> constructor) {
+        MethodHandles.Lookup lookup = lookupFor(constructor.getDeclaringClass());
+        MethodHandle handle;
+        try {
+            handle = lookup.unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access " + constructor, e);
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(constructor.getDeclaringClass()));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            return () -> {
+                try {
+                    return (T) handle.invoke();
+                } catch (Throwable t) {
+                    throw new IllegalStateException("Cannot call " + constructor, t);
+                }
+            };
+        }
+    }
+
+    // A lookup inside the entity class lets the generated lambdas live next to it
+    private static MethodHandles.Lookup lookupFor(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            return MethodHandles.lookup();
+        }
+    }
+
+    private static MethodHandle unreflect(MethodHandles.Lookup lookup, Method method) {
+        try {
+            return lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access " + method, e);
+        }
+    }
+
+    static Class<?> boxed(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.codec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process wide lookup of entity codecs by type. Types nobody registered a codec for get one
+// derived from their fields on first use.
+public final class CodecRegistry {
+    private static final Map<Class<?>, EntityCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    private CodecRegistry() {
+
+    }
+
+    public static <T> EntityCodec<T> register(EntityCodec<T> codec) {
+        CODECS.put(codec.getType(), codec);
+        return codec;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityCodec<T> codecFor(Class<T> type) {
+        return (EntityCodec<T>) CODECS.computeIfAbsent(type, EntityCodec::derive);
+    }
+}
@@ -0,0 +1,402 @@
+package org.example.codec;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.example.storage.BinaryStore;
+import org.example.storage.CSV;
+import org.example.storage.FieldTokenizer;
+import org.example.storage.Query;
+import org.example.storage.SQLite;
+import org.example.storage.TXT;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Describes an entity once (its id property and the other properties in column order) and
+// derives every storage mapping from that: comma separated lines for CSV/TXT, the BinaryStore
+// payload, SQLite statements and a Gson TypeAdapter. Reflection is only used while the codec
+// is built; the accessors it generates are plain lambdas.
+public final class EntityCodec<T> {
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    // The id property comes first
+    private final List<FieldCodec<T>> fields;
+    private final Map<String, FieldCodec<T>> fieldsByName = new HashMap<>();
+
+    private EntityCodec(Class<T> type, Supplier<T> factory, List<FieldCodec<T>> fields) {
+        this.type = type;
+        this.factory = factory;
+        this.fields = Collections.unmodifiableList(fields);
+        for (FieldCodec<T> field : fields) {
+            fieldsByName.put(field.getName(), field);
+        }
+        if (fields.get(0).getKind() != FieldCodec.Kind.INT) {
+            throw new IllegalArgumentException("Id property " + fields.get(0).getName() + " of " + type.getName() + " is not an int");
+        }
+    }
+
+    // Builds a codec from bean properties; the first property is the id. The type needs a
+    // no-argument constructor and a getter and setter for every property.
+    public static <T> EntityCodec<T> of(Class<T> type, String... properties) {
+        if (properties.length == 0) {
+            throw new IllegalArgumentException("No properties given for " + type.getName());
+        }
+        List<FieldCodec<T>> fields = new ArrayList<>(properties.length);
+        for (String property : properties) {
+            fields.add(property(type, property));
+        }
+        try {
+            return new EntityCodec<>(type, Accessors.constructor(type.getDeclaredConstructor()), fields);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no no-argument constructor", e);
+        }
+    }
+
+    // Builds a codec from the instance fields of the type in declaration order, with the
+    // field named "id" moved to the front
+    public static <T> EntityCodec<T> derive(Class<T> type) {
+        List<String> properties = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                properties.add(field.getName());
+            }
+        }
+        if (!properties.remove("id")) {
+            throw new IllegalArgumentException(type.getName() + " has no id field");
+        }
+        properties.add(0, "id");
+        return of(type, properties.toArray(new String[0]));
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public List<FieldCodec<T>> getFields() {
+        return fields;
+    }
+
+    public FieldCodec<T> getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    public Integer idOf(T obj) {
+        return (Integer) fields.get(0).get(obj);
+    }
+
+    public T newInstance() {
+        return factory.get();
+    }
+
+    // Empty query over this type; conditions refer to properties by name
+    public Query<T> query() {
+        return new Query<>(this::idOf, name -> {
+            FieldCodec<T> field = fieldsByName.get(name);
+            return field == null ? null : field::get;
+        });
+    }
+
+    // Comma separated line
+
+    public String format(T obj) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            fields.get(i).appendText(line, obj);
+        }
+        return line.toString();
+    }
+
+    public T parse(String line) {
+        T obj = factory.get();
+        int from = 0;
+        for (FieldCodec<T> field : fields) {
+            if (from > line.length()) {
+                throw new IllegalArgumentException("Missing " + field.getName() + " field");
+            }
+            int to = line.indexOf(',', from);
+            if (to < 0) {
+                to = line.length();
+            }
+            field.set(obj, field.parseText(line.substring(from, to)));
+            from = to + 1;
+        }
+        return obj;
+    }
+
+    public T parse(ByteBuffer buffer, int offset, int length) {
+        return parse(buffer, offset, length, new FieldTokenizer(','));
+    }
+
+    // tokens is reset onto the line, so a caller parsing many lines can reuse one
+    public T parse(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+        T obj = factory.get();
+        tokens.reset(buffer, offset, length);
+        for (FieldCodec<T> field : fields) {
+            if (!tokens.next()) {
+                throw new IllegalArgumentException("Missing " + field.getName() + " field");
+            }
+            field.set(obj, field.parseText(buffer, tokens.start(), tokens.end()));
+        }
+        return obj;
+    }
+
+    public CSV.CSVParser<T> csvParser() {
+        return new CSV.CSVParser<T>() {
+            @Override
+            public T parse(String line) {
+                return EntityCodec.this.parse(line);
+            }
+
+            @Override
+            public T parse(ByteBuffer buffer, int offset, int length) {
+                return EntityCodec.this.parse(buffer, offset, length);
+            }
+
+            @Override
+            public T parse(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+                return EntityCodec.this.parse(buffer, offset, length, tokens);
+            }
+
+            @Override
+            public Integer getId(T obj) {
+                return idOf(obj);
+            }
+        };
+    }
+
+    public CSV.CSVFormatter<T> csvFormatter() {
+        return this::format;
+    }
+
+    public TXT.TextSerializer<T> textSerializer() {
+        return this::format;
+    }
+
+    public TXT.TextDeserializer<T> textDeserializer() {
+        return new TXT.TextDeserializer<T>() {
+            @Override
+            public T deserialize(String str) {
+                return parse(str);
+            }
+
+            @Override
+            public T deserialize(ByteBuffer buffer, int offset, int length) {
+                return parse(buffer, offset, length);
+            }
+
+            @Override
+            public T deserialize(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+                return parse(buffer, offset, length, tokens);
+            }
+
+            @Override
+            public Integer getId(T obj) {
+                return idOf(obj);
+            }
+        };
+    }
+
+    // BinaryStore payload: every property but the id, which the store keeps itself
+    public BinaryStore.RecordCodec<T> binaryCodec() {
+        List<FieldCodec<T>> payload = fields.subList(1, fields.size());
+        FieldCodec<T> id = fields.get(0);
+        return new BinaryStore.RecordCodec<T>() {
+            @Override
+            public int idOf(T obj) {
+                return EntityCodec.this.idOf(obj);
+            }
+
+            @Override
+            public int sizeOf(T obj) {
+                int size = 0;
+                for (FieldCodec<T> field : payload) {
+                    size += field.binarySize(obj);
+                }
+                return size;
+            }
+
+            @Override
+            public void encode(T obj, ByteBuffer buffer) {
+                for (FieldCodec<T> field : payload) {
+                    field.putBinary(buffer, obj);
+                }
+            }
+
+            @Override
+            public T decode(int recordId, ByteBuffer buffer) {
+                T obj = factory.get();
+                id.set(obj, recordId);
+                for (FieldCodec<T> field : payload) {
+                    field.set(obj, field.getBinary(buffer));
+                }
+                return obj;
+            }
+        };
+    }
+
+    // Statements for a table with one column per property, named after it. Columns are read
+    // by position and update rewrites every column, including the id.
+    public SQLite.SQLiteObjectMapper<T> sqliteMapper(String table) {
+        String id = fields.get(0).getName();
+        String columns = fields.stream().map(FieldCodec::getName).collect(Collectors.joining(", "));
+        String definitions = fields.stream()
+                .map(field -> field.getName() + " " + field.sqlType() + (field == fields.get(0) ? " PRIMARY KEY" : ""))
+                .collect(Collectors.joining(", "));
+        String placeholders = fields.stream().map(field -> "?").collect(Collectors.joining(", "));
+        String assignments = fields.stream().map(field -> field.getName() + " = ?").collect(Collectors.joining(", "));
+        String createSql = "CREATE TABLE IF NOT EXISTS " + table + " (" + definitions + ");";
+        String insertSql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + placeholders + ");";
+        String selectSql = "SELECT " + columns + " FROM " + table + " WHERE " + id + " = ?;";
+        String selectAllSql = "SELECT " + columns + " FROM " + table + ";";
+        String updateSql = "UPDATE " + table + " SET " + assignments + " WHERE " + id + " = ?;";
+        String deleteSql = "DELETE FROM " + table + " WHERE " + id + " = ?;";
+        return new SQLite.SQLiteObjectMapper<T>() {
+            @Override
+            public String getTableCreationSQL() {
+                return createSql;
+            }
+
+            @Override
+            public String getInsertSQL() {
+                return insertSql;
+            }
+
+            @Override
+            public String getSelectSQL() {
+                return selectSql;
+            }
+
+            @Override
+            public String getSelectAllSQL() {
+                return selectAllSql;
+            }
+
+            @Override
+            public String getUpdateSQL() {
+                return updateSql;
+            }
+
+            @Override
+            public int getUpdateIdParameterIndex() {
+                return fields.size() + 1;
+            }
+
+            @Override
+            public String getDeleteSQL() {
+                return deleteSql;
+            }
+
+            @Override
+            public void mapObjectToPreparedStatement(PreparedStatement pstmt, T obj) throws SQLException {
+                for (int i = 0; i < fields.size(); i++) {
+                    fields.get(i).bind(pstmt, i + 1, obj);
+                }
+            }
+
+            @Override
+            public T mapResultSetToObject(ResultSet rs) throws SQLException {
+                T obj = factory.get();
+                for (int i = 0; i < fields.size(); i++) {
+                    fields.get(i).set(obj, fields.get(i).column(rs, i + 1));
+                }
+                return obj;
+            }
+
+            @Override
+            public String getIdColumnName() {
+                return id;
+            }
+
+            @Override
+            public String getColumnName(String field) {
+                return fieldsByName.containsKey(field) ? field : null;
+            }
+
+            @Override
+            public String getSelectWhereSQL(String where) {
+                return "SELECT " + columns + " FROM " + table + " WHERE " + where;
+            }
+        };
+    }
+
+    // Streams the properties by name; unknown names are skipped and missing ones keep the
+    // value the no-argument constructor gave them
+    public TypeAdapter<T> typeAdapter() {
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter writer, T obj) throws IOException {
+                if (obj == null) {
+                    writer.nullValue();
+                    return;
+                }
+                writer.beginObject();
+                for (FieldCodec<T> field : fields) {
+                    field.writeJson(writer, obj);
+                }
+                writer.endObject();
+            }
+
+            @Override
+            public T read(JsonReader reader) throws IOException {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    return null;
+                }
+                T obj = factory.get();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    FieldCodec<T> field = fieldsByName.get(reader.nextName());
+                    if (field == null) {
+                        reader.skipValue();
+                    } else {
+                        field.set(obj, field.readJson(reader));
+                    }
+                }
+                reader.endObject();
+                return obj;
+            }
+        };
+    }
+
+    private static <T> FieldCodec<T> property(Class<T> type, String name) {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Method getter = findMethod(type, "get" + suffix);
+        if (getter == null) {
+            getter = findMethod(type, "is" + suffix);
+        }
+        if (getter == null) {
+            throw new IllegalArgumentException(type.getName() + " has no getter for " + name);
+        }
+        Method setter = findMethod(type, "set" + suffix, getter.getReturnType());
+        if (setter == null) {
+            throw new IllegalArgumentException(type.getName() + " has no setter for " + name);
+        }
+        return new FieldCodec<>(name, getter.getReturnType(), Accessors.getter(getter), Accessors.setter(setter));
+    }
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.example.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.example.storage.BinaryFields;
+import org.example.storage.ByteSlices;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// One property of an entity: its name, value kind and generated accessors, plus the
+// conversions every storage format needs for it
+public final class FieldCodec<T> {
+    public enum Kind {
+        INT,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        STRING
+    }
+
+    private final String name;
+    private final Kind kind;
+    // Primitive properties are never null, boxed ones carry a presence flag in binary form
+    private final boolean primitive;
+    private final Function<T, Object> getter;
+    private final BiConsumer<T, Object> setter;
+
+    FieldCodec(String name, Class<?> type, Function<T, Object> getter, BiConsumer<T, Object> setter) {
+        this.name = name;
+        this.kind = kindOf(type);
+        this.primitive = type.isPrimitive();
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Object get(T obj) {
+        return getter.apply(obj);
+    }
+
+    public void set(T obj, Object value) {
+        if (value == null && primitive) {
+            return;
+        }
+        setter.accept(obj, value);
+    }
+
+    // Delimited text, written the way the hand written formatters did (null becomes "null")
+
+    void appendText(StringBuilder out, T obj) {
+        out.append(get(obj));
+    }
+
+    Object parseText(String text) {
+        String value = text.trim();
+        if (kind != Kind.STRING && !primitive && value.equals("null")) {
+            return null;
+        }
+        switch (kind) {
+            case INT:
+                return Integer.parseInt(value);
+            case LONG:
+                return Long.parseLong(value);
+            case DOUBLE:
+                return Double.parseDouble(value);
+            case BOOLEAN:
+                return Boolean.parseBoolean(value);
+            default:
+                return value;
+        }
+    }
+
+    // Parses [from, to) of a mapped line; ints and strings are read without an intermediate String
+    Object parseText(ByteBuffer buffer, int from, int to) {
+        switch (kind) {
+            case INT:
+                if (!primitive && ByteSlices.decodeTrimmed(buffer, from, to).equals("null")) {
+                    return null;
+                }
+                return ByteSlices.parseInt(buffer, from, to);
+            case STRING:
+                return ByteSlices.decodeTrimmed(buffer, from, to);
+            default:
+                return parseText(ByteSlices.decode(buffer, from, to));
+        }
+    }
+
+    // Binary payload for BinaryStore
+
+    int binarySize(T obj) {
+        Object value = get(obj);
+        if (kind == Kind.STRING) {
+            return BinaryFields.sizeOfString((String) value);
+        }
+        int flag = primitive ? 0 : 1;
+        if (value == null) {
+            return flag;
+        }
+        switch (kind) {
+            case INT:
+                return flag + BinaryFields.sizeOfVarInt(zigZag((Integer) value));
+            case BOOLEAN:
+                return flag + 1;
+            default:
+                return flag + 8;
+        }
+    }
+
+    void putBinary(ByteBuffer buffer, T obj) {
+        Object value = get(obj);
+        if (kind == Kind.STRING) {
+            BinaryFields.putString(buffer, (String) value);
+            return;
+        }
+        if (!primitive) {
+            buffer.put((byte) (value == null ? 0 : 1));
+            if (value == null) {
+                return;
+            }
+        }
+        switch (kind) {
+            case INT:
+                BinaryFields.putVarInt(buffer, zigZag((Integer) value));
+                break;
+            case LONG:
+                buffer.putLong((Long) value);
+                break;
+            case DOUBLE:
+                buffer.putDouble((Double) value);
+                break;
+            default:
+                buffer.put((byte) ((Boolean) value ? 1 : 0));
+        }
+    }
+
+    Object getBinary(ByteBuffer buffer) {
+        if (kind == Kind.STRING) {
+            return BinaryFields.getString(buffer);
+        }
+        if (!primitive && buffer.get() == 0) {
+            return null;
+        }
+        switch (kind) {
+            case INT:
+                int encoded = BinaryFields.getVarInt(buffer);
+                return (encoded >>> 1) ^ -(encoded & 1);
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            default:
+                return buffer.get() != 0;
+        }
+    }
+
+    // SQL binding by column position
+
+    String sqlType() {
+        switch (kind) {
+            case INT:
+            case LONG:
+            case BOOLEAN:
+                return "INTEGER";
+            case DOUBLE:
+                return "REAL";
+            default:
+                return "TEXT";
+        }
+    }
+
+    void bind(PreparedStatement pstmt, int index, T obj) throws SQLException {
+        Object value = get(obj);
+        if (value == null) {
+            pstmt.setNull(index, kind == Kind.STRING ? Types.VARCHAR : kind == Kind.DOUBLE ? Types.REAL : Types.INTEGER);
+            return;
+        }
+        switch (kind) {
+            case INT:
+                pstmt.setInt(index, (Integer) value);
+                break;
+            case LONG:
+                pstmt.setLong(index, (Long) value);
+                break;
+            case DOUBLE:
+                pstmt.setDouble(index, (Double) value);
+                break;
+            case BOOLEAN:
+                pstmt.setInt(index, (Boolean) value ? 1 : 0);
+                break;
+            default:
+                pstmt.setString(index, (String) value);
+        }
+    }
+
+    Object column(ResultSet rs, int index) throws SQLException {
+        Object value;
+        switch (kind) {
+            case INT:
+                value = rs.getInt(index);
+                break;
+            case LONG:
+                value = rs.getLong(index);
+                break;
+            case DOUBLE:
+                value = rs.getDouble(index);
+                break;
+            case BOOLEAN:
+                value = rs.getInt(index) != 0;
+                break;
+            default:
+                return rs.getString(index);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    // JSON
+
+    void writeJson(JsonWriter writer, T obj) throws IOException {
+        Object value = get(obj);
+        writer.name(name);
+        if (value == null) {
+            writer.nullValue();
+        } else if (kind == Kind.STRING) {
+            writer.value((String) value);
+        } else if (kind == Kind.BOOLEAN) {
+            writer.value((Boolean) value);
+        } else {
+            writer.value((Number) value);
+        }
+    }
+
+    Object readJson(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        switch (kind) {
+            case INT:
+                return reader.nextInt();
+            case LONG:
+                return reader.nextLong();
+            case DOUBLE:
+                return reader.nextDouble();
+            case BOOLEAN:
+                return reader.nextBoolean();
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        Class<?> boxed = Accessors.boxed(type);
+        if (boxed == Integer.class) {
+            return Kind.INT;
+        } else if (boxed == Long.class) {
+            return Kind.LONG;
+        } else if (boxed == Double.class) {
+            return Kind.DOUBLE;
+        } else if (boxed == Boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (type == String.class) {
+            return Kind.STRING;
+        }
+        throw new IllegalArgumentException("Unsupported property type " + type.getName());
+    }
+}
@@ -0,0 +1,219 @@
+package org.example.metrics;
+
+import org.example.metrics.StorageMetrics.Operation;
+import org.example.storage.CRUD;
+import org.example.storage.Query;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+// Times every call into a backend and estimates the record bytes moved. The estimate comes from
+// recordSize and says nothing about the bytes the backend actually reads or writes: the
+// decorator sits above the storage layer, so encoding, index, framing and compression are not
+// seen. Likewise only exceptions that reach the caller are counted; the file and SQLite
+// backends log most of their own I/O errors and return, which shows up as a successful call.
+public class InstrumentedCRUD<T> implements CRUD<T>, AutoCloseable {
+    private final CRUD<T> dataSource;
+    private final StorageMetrics metrics;
+    private final ToLongFunction<T> recordSize;
+
+    public InstrumentedCRUD(CRUD<T> dataSource, StorageMetrics metrics, ToLongFunction<T> recordSize) {
+        this.dataSource = dataSource;
+        this.metrics = metrics;
+        this.recordSize = recordSize;
+    }
+
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void create(T obj) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataSource.create(obj);
+            metrics.addEstimatedBytesWritten(recordSize.applyAsLong(obj));
+            failed = false;
+        } finally {
+            record(Operation.CREATE, start, failed);
+        }
+    }
+
+    @Override
+    public T read(Integer id) {
+        return id == null ? dataSource.read(id) : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T obj = dataSource.read(id);
+            if (obj != null) {
+                metrics.addEstimatedBytesRead(recordSize.applyAsLong(obj));
+            }
+            failed = false;
+            return obj;
+        } finally {
+            record(Operation.READ, start, failed);
+        }
+    }
+
+    @Override
+    public List<T> readAll() {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<T> objs = dataSource.readAll();
+            for (T obj : objs) {
+                metrics.addEstimatedBytesRead(recordSize.applyAsLong(obj));
+            }
+            failed = false;
+            return objs;
+        } finally {
+            record(Operation.READ_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public List<T> query(Query<T> query) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<T> objs = dataSource.query(query);
+            for (T obj : objs) {
+                metrics.addEstimatedBytesRead(recordSize.applyAsLong(obj));
+            }
+            failed = false;
+            return objs;
+        } finally {
+            record(Operation.QUERY, start, failed);
+        }
+    }
+
+    // Only opening the stream is timed; bytes are counted as records are pulled
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Stream<T> stream = dataSource.stream(fetchSize).peek(obj -> metrics.addEstimatedBytesRead(recordSize.applyAsLong(obj)));
+            failed = false;
+            return stream;
+        } finally {
+            record(Operation.STREAM, start, failed);
+        }
+    }
+
+    // Not timed, since the sink's own work would be counted; bytes are counted per batch
+    @Override
+    public void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        dataSource.forEachBatch(batchSize, batch -> {
+            for (T obj : batch) {
+                metrics.addEstimatedBytesRead(recordSize.applyAsLong(obj));
+            }
+            sink.accept(batch);
+        });
+    }
+
+    @Override
+    public void update(Integer id, T obj) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataSource.update(id, obj);
+            metrics.addEstimatedBytesWritten(recordSize.applyAsLong(obj));
+            failed = false;
+        } finally {
+            record(Operation.UPDATE, start, failed);
+        }
+    }
+
+    @Override
+    public void delete(Integer id) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataSource.delete(id);
+            failed = false;
+        } finally {
+            record(Operation.DELETE, start, failed);
+        }
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataSource.createAll(objs);
+            for (T obj : objs) {
+                metrics.addEstimatedBytesWritten(recordSize.applyAsLong(obj));
+            }
+            failed = false;
+        } finally {
+            record(Operation.CREATE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataSource.updateAll(objs);
+            for (T obj : objs.values()) {
+                metrics.addEstimatedBytesWritten(recordSize.applyAsLong(obj));
+            }
+            failed = false;
+        } finally {
+            record(Operation.UPDATE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataSource.deleteAll(ids);
+            failed = false;
+        } finally {
+            record(Operation.DELETE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public void force() {
+        dataSource.force();
+    }
+
+    // Closes the wrapped backend when it holds resources. Checked failures other than I/O ones
+    // are wrapped, so close() cannot throw InterruptedException at a try-with-resources block.
+    @Override
+    public void close() throws IOException {
+        if (!(dataSource instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) dataSource).close();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Closing the backend failed", e);
+        }
+    }
+
+    private void record(Operation operation, long start, boolean failed) {
+        metrics.get(operation).record(System.nanoTime() - start, failed);
+    }
+}
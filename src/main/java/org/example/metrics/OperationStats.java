@@ -0,0 +1,61 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OperationStats implements OperationStatsMXBean {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Calls that ended in an exception reaching the caller
+    private final AtomicLong exceptions = new AtomicLong();
+
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            exceptions.incrementAndGet();
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getExceptions() {
+        return exceptions.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.percentile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.percentile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.percentile(0.999) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        exceptions.set(0);
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.metrics;
+
+// JMX view of one operation of one backend; latencies are in microseconds. Exceptions counts
+// calls that threw to the caller, not failures a backend caught and logged itself.
+public interface OperationStatsMXBean {
+    long getCalls();
+
+    long getExceptions();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
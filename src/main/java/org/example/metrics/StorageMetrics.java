@@ -0,0 +1,157 @@
+package org.example.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters for one backend: a latency histogram plus call and exception counts per operation,
+// and an estimate of the record bytes read and written. Published under
+// org.example.storage:type=Backend,name=<backend> with one Operation bean per operation.
+public class StorageMetrics implements StorageMetricsMXBean {
+    private static final String DOMAIN = "org.example.storage";
+
+    public enum Operation {
+        CREATE,
+        READ,
+        READ_ALL,
+        STREAM,
+        QUERY,
+        UPDATE,
+        DELETE,
+        CREATE_ALL,
+        UPDATE_ALL,
+        DELETE_ALL
+    }
+
+    private final String backend;
+    private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+    private final AtomicLong estimatedBytesRead = new AtomicLong();
+    private final AtomicLong estimatedBytesWritten = new AtomicLong();
+
+    public StorageMetrics(String backend) {
+        this.backend = backend;
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public OperationStats get(Operation operation) {
+        return operations.get(operation);
+    }
+
+    void addEstimatedBytesRead(long bytes) {
+        estimatedBytesRead.addAndGet(bytes);
+    }
+
+    void addEstimatedBytesWritten(long bytes) {
+        estimatedBytesWritten.addAndGet(bytes);
+    }
+
+    @Override
+    public long getEstimatedBytesRead() {
+        return estimatedBytesRead.get();
+    }
+
+    @Override
+    public long getEstimatedBytesWritten() {
+        return estimatedBytesWritten.get();
+    }
+
+    @Override
+    public long getCalls() {
+        long calls = 0;
+        for (OperationStats stats : operations.values()) {
+            calls += stats.getCalls();
+        }
+        return calls;
+    }
+
+    @Override
+    public long getExceptions() {
+        long exceptions = 0;
+        for (OperationStats stats : operations.values()) {
+            exceptions += stats.getExceptions();
+        }
+        return exceptions;
+    }
+
+    @Override
+    public void reset() {
+        operations.values().forEach(OperationStats::reset);
+        estimatedBytesRead.set(0);
+        estimatedBytesWritten.set(0);
+    }
+
+    // Registers the backend and operation beans with the platform MBean server, replacing any
+    // beans left behind by an earlier instance with the same backend name
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            registerReplacing(server, this, backendName());
+            for (Map.Entry<Operation, OperationStats> entry : operations.entrySet()) {
+                registerReplacing(server, entry.getValue(), operationName(entry.getKey()));
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(backendName())) {
+                server.unregisterMBean(backendName());
+            }
+            for (Operation operation : operations.keySet()) {
+                if (server.isRegistered(operationName(operation))) {
+                    server.unregisterMBean(operationName(operation));
+                }
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // One line per operation that has been called, for the STATS command
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%s: %d calls, %d exceptions, ~%d bytes read, ~%d bytes written (estimated)%n",
+                backend, getCalls(), getExceptions(), getEstimatedBytesRead(), getEstimatedBytesWritten()));
+        for (Map.Entry<Operation, OperationStats> entry : operations.entrySet()) {
+            OperationStats stats = entry.getValue();
+            if (stats.getCalls() == 0) {
+                continue;
+            }
+            report.append(String.format(Locale.ROOT,
+                    "  %-10s calls=%d exceptions=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    entry.getKey(), stats.getCalls(), stats.getExceptions(), stats.getP50Micros(),
+                    stats.getP99Micros(), stats.getP999Micros(), stats.getMaxMicros()));
+        }
+        return report.toString();
+    }
+
+    private ObjectName backendName() throws JMException {
+        return new ObjectName(DOMAIN + ":type=Backend,name=" + ObjectName.quote(backend));
+    }
+
+    private ObjectName operationName(Operation operation) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Operation,backend=" + ObjectName.quote(backend)
+                + ",name=" + operation.name().toLowerCase(Locale.ROOT));
+    }
+
+    private static void registerReplacing(MBeanServer server, Object bean, ObjectName name) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.metrics;
+
+// JMX view of one backend. Byte counts are the caller's estimate of the records moved through
+// the CRUD interface, not the bytes the backend read from or wrote to storage.
+public interface StorageMetricsMXBean {
+    long getEstimatedBytesRead();
+
+    long getEstimatedBytesWritten();
+
+    long getCalls();
+
+    long getExceptions();
+
+    void reset();
+}
@@ -0,0 +1,124 @@
+package org.example.provider;
+
+import org.example.codec.EntityCodec;
+import org.example.storage.*;
+
+import java.io.Serializable;
+
+// Providers for the formats that ship with the framework. The line formats keep their sidecar
+// index by default so READ does not scan the whole file.
+public final class BuiltinProviders {
+    private BuiltinProviders() {
+
+    }
+
+    public static class Csv implements StorageProvider {
+        @Override
+        public String name() {
+            return "CSV";
+        }
+
+        @Override
+        public String defaultPath() {
+            return "csv_file.csv";
+        }
+
+        @Override
+        public <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec) {
+            return new CSV<>(config.getPath(), codec.csvParser(), codec.csvFormatter(), config.getOptions(true));
+        }
+    }
+
+    public static class Json implements StorageProvider {
+        @Override
+        public String name() {
+            return "JSON";
+        }
+
+        @Override
+        public String defaultPath() {
+            return "json_file.json";
+        }
+
+        @Override
+        public <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec) {
+            return new JSON<>(config.getPath(), codec, config.getOptions(false));
+        }
+    }
+
+    public static class Txt implements StorageProvider {
+        @Override
+        public String name() {
+            return "TXT";
+        }
+
+        @Override
+        public String defaultPath() {
+            return "txt_file.txt";
+        }
+
+        @Override
+        public <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec) {
+            return new TXT<>(config.getPath(), codec.textSerializer(), codec.textDeserializer(), config.getOptions(true));
+        }
+    }
+
+    // Java serialization needs no codec, but the type has to be Serializable and Identifiable
+    public static class Serialized implements StorageProvider {
+        @Override
+        public String name() {
+            return "SERIALIZED";
+        }
+
+        @Override
+        public String defaultPath() {
+            return "serialized_file.ser";
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec) {
+            Class<T> type = codec.getType();
+            if (!Serializable.class.isAssignableFrom(type) || !SerializedObject.Identifiable.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException(type.getName() + " is not Serializable and Identifiable");
+            }
+            return (CRUD<T>) new SerializedObject(config.getPath(), config.getOptions(false));
+        }
+    }
+
+    public static class Binary implements StorageProvider {
+        @Override
+        public String name() {
+            return "BINARY";
+        }
+
+        @Override
+        public String defaultPath() {
+            return "binary_file.bin";
+        }
+
+        @Override
+        public <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec) {
+            return new BinaryStore<>(config.getPath(), codec.binaryCodec(), config.getOptions(false));
+        }
+    }
+
+    // The table is named after the type unless sqlite.table says otherwise
+    public static class SQLiteProvider implements StorageProvider {
+        @Override
+        public String name() {
+            return "SQLITE";
+        }
+
+        @Override
+        public String defaultPath() {
+            return "database.db";
+        }
+
+        @Override
+        public <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec) {
+            String table = config.getString("table", codec.getType().getSimpleName() + "s");
+            return new SQLite<>(config.getPath(), codec.sqliteMapper(table), config.getInt("readers", SQLite.DEFAULT_READER_CONNECTIONS));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.provider;
+
+import org.example.storage.StorageOptions;
+
+import java.util.Properties;
+
+// Settings of one backend, read from the keys prefixed with its lower case name, e.g.
+// csv.path=data.csv or csv.indexed=false. Missing keys fall back to the given defaults.
+public class StorageConfig {
+    private final String prefix;
+    private final Properties properties;
+    private final String path;
+
+    StorageConfig(String name, Properties properties, String defaultPath) {
+        this.prefix = name.toLowerCase() + ".";
+        this.properties = properties;
+        this.path = properties.getProperty(prefix + "path", defaultPath);
+    }
+
+    private StorageConfig(StorageConfig config, String path) {
+        this.prefix = config.prefix;
+        this.properties = config.properties;
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = properties.getProperty(prefix + key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(prefix + key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(prefix + key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(prefix + key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    // File backend options; indexedByDefault is the format's own default for the index
+    public StorageOptions getOptions(boolean indexedByDefault) {
+        StorageOptions options = new StorageOptions();
+        options.setIndexed(getBoolean("indexed", indexedByDefault));
+        options.setLogStructured(getBoolean("logStructured", options.isLogStructured()));
+        options.setCompactionThreshold(getDouble("compactionThreshold", options.getCompactionThreshold()));
+        options.setPageSize(getInt("pageSize", options.getPageSize()));
+        options.setCompressed(getBoolean("compressed", options.isCompressed()));
+        options.setBlockSize(getInt("blockSize", options.getBlockSize()));
+        return options;
+    }
+
+    // Same settings for shard i, whose file name gets ".i" before the extension
+    StorageConfig forShard(int shard) {
+        int dot = path.lastIndexOf('.');
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        String shardPath = dot > slash + 1
+                ? path.substring(0, dot) + "." + shard + path.substring(dot)
+                : path + "." + shard;
+        return new StorageConfig(this, shardPath);
+    }
+}
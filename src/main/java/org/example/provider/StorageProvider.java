@@ -0,0 +1,18 @@
+package org.example.provider;
+
+import org.example.codec.EntityCodec;
+import org.example.storage.CRUD;
+
+// A storage format the CLI can select by name. Implementations are found through
+// ServiceLoader (META-INF/services/org.example.provider.StorageProvider), so a new format
+// only needs a jar on the classpath. Constructing a provider must be cheap: files and
+// connections are only opened in open(), for the one format that is selected.
+public interface StorageProvider {
+    // Upper case name the format is selected by, e.g. CSV
+    String name();
+
+    // File or database used when the config does not set <name>.path
+    String defaultPath();
+
+    <T> CRUD<T> open(StorageConfig config, EntityCodec<T> codec);
+}
@@ -0,0 +1,95 @@
+package org.example.provider;
+
+import org.example.codec.EntityCodec;
+import org.example.storage.CRUD;
+import org.example.storage.ShardedStore;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+
+// Backends by name. Providers are discovered through ServiceLoader; a backend is only built,
+// and its files or connections opened, the first time it is asked for. Settings come from
+// a properties file and command line overrides (see StorageConfig for the keys), and
+// <name>.shards=N spreads the backend over N files with a ShardedStore, whose partitioner is
+// recorded in <path>.shards.
+public class StorageRegistry implements AutoCloseable {
+    private final Properties properties;
+    private final Map<String, StorageProvider> providers = new LinkedHashMap<>();
+    // Guarded by this
+    private final Map<String, CRUD<?>> opened = new LinkedHashMap<>();
+
+    public StorageRegistry(Properties properties) {
+        this(properties, StorageRegistry.class.getClassLoader());
+    }
+
+    public StorageRegistry(Properties properties, ClassLoader classLoader) {
+        this.properties = properties;
+        for (StorageProvider provider : ServiceLoader.load(StorageProvider.class, classLoader)) {
+            providers.putIfAbsent(provider.name().toUpperCase(), provider);
+        }
+    }
+
+    // Reads a properties file; a missing file is the same as an empty one
+    public static Properties loadProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    public List<String> getNames() {
+        return new ArrayList<>(providers.keySet());
+    }
+
+    public boolean contains(String name) {
+        return providers.containsKey(name.toUpperCase());
+    }
+
+    // The backend called name, opened on first use; null if no provider has that name.
+    // A name always stands for one record type, the one it was first opened with.
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CRUD<T> open(String name, EntityCodec<T> codec) {
+        String key = name.toUpperCase();
+        CRUD<?> dataAccess = opened.get(key);
+        if (dataAccess == null) {
+            StorageProvider provider = providers.get(key);
+            if (provider == null) {
+                return null;
+            }
+            StorageConfig config = new StorageConfig(key, properties, provider.defaultPath());
+            int shards = config.getInt("shards", 1);
+            dataAccess = shards > 1
+                    ? new ShardedStore<>(ShardedStore.byHash(shards), shard -> provider.open(config.forShard(shard), codec),
+                            codec::idOf, config.getPath() + ".shards")
+                    : provider.open(config, codec);
+            opened.put(key, dataAccess);
+        }
+        return (CRUD<T>) dataAccess;
+    }
+
+    // Closes the backends that were opened
+    @Override
+    public synchronized void close() {
+        for (CRUD<?> dataAccess : opened.values()) {
+            if (dataAccess instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) dataAccess).close();
+                } catch (Exception e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+        opened.clear();
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.proxy;
+
+import org.example.storage.AsyncCRUD;
+import org.example.storage.CRUD;
+import org.example.storage.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Runs the calls of a blocking backend on a virtual thread per task, with at most
+// maxConcurrency of them inside the backend at once. On runtimes without virtual threads it
+// falls back to a pool of maxConcurrency daemon threads.
+public class AsyncProxy<T> implements AsyncCRUD<T>, AutoCloseable {
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    private final CRUD<T> dataSource;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public AsyncProxy(CRUD<T> dataSource) {
+        this(dataSource, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    public AsyncProxy(CRUD<T> dataSource, int maxConcurrency) {
+        this.dataSource = dataSource;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.executor = newExecutor(Math.max(1, maxConcurrency));
+    }
+
+    public CompletableFuture<Void> createAsync(T obj) {
+        return run(() -> dataSource.create(obj));
+    }
+
+    public CompletableFuture<T> readAsync(Integer id) {
+        return submit(() -> dataSource.read(id));
+    }
+
+    public CompletableFuture<List<T>> readAllAsync() {
+        return submit(dataSource::readAll);
+    }
+
+    public CompletableFuture<List<T>> queryAsync(Query<T> query) {
+        return submit(() -> dataSource.query(query));
+    }
+
+    public CompletableFuture<Void> updateAsync(Integer id, T obj) {
+        return run(() -> dataSource.update(id, obj));
+    }
+
+    public CompletableFuture<Void> deleteAsync(Integer id) {
+        return run(() -> dataSource.delete(id));
+    }
+
+    public CompletableFuture<Void> createAllAsync(Collection<T> objs) {
+        return run(() -> dataSource.createAll(objs));
+    }
+
+    public CompletableFuture<Void> updateAllAsync(Map<Integer, T> objs) {
+        return run(() -> dataSource.updateAll(objs));
+    }
+
+    public CompletableFuture<Void> deleteAllAsync(Collection<Integer> ids) {
+        return run(() -> dataSource.deleteAll(ids));
+    }
+
+    // Stops accepting calls; calls already submitted still run. The backend stays open.
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Void> run(Runnable call) {
+        return submit(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            // Virtual threads park cheaply here, so the bound costs no platform thread
+            permits.acquireUninterruptibly();
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    private static ExecutorService newExecutor(int maxConcurrency) {
+        try {
+            // Looked up reflectively so the class still runs on Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "async-proxy-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
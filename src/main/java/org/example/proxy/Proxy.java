@@ -2,33 +2,128 @@ package org.example.proxy;
 
 import org.example.service.IDatabase;
 import org.example.storage.CRUD;
+import org.example.storage.Query;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+// Front door to a backend. Wrap the backend in a WriteBehindQueue to batch writes; the cache
+// then sits in front of the queue, so cached reads still see queued writes.
 public class Proxy<T> implements IDatabase<T> {
     private CRUD<T> dataSource;
+    // Optional read-through cache; writes go to the backend first and then drop the entry
+    private ProxyCache<T> cache;
 
     public Proxy(CRUD<T> dataSource) {
+        this(dataSource, null);
+    }
+
+    public Proxy(CRUD<T> dataSource, ProxyCache<T> cache) {
         this.dataSource = dataSource;
+        this.cache = cache;
+    }
+
+    public ProxyCache<T> getCache() {
+        return cache;
     }
 
     public void create(T obj) {
         dataSource.create(obj);
+        if (cache != null) {
+            cache.invalidateObject(obj);
+        }
     }
 
     public T read(Integer id) {
-        return dataSource.read(id);
+        return id == null ? dataSource.read(id) : read(id.intValue());
+    }
+
+    public T read(int id) {
+        if (cache == null) {
+            return dataSource.read(id);
+        }
+        T obj = cache.get(id);
+        if (obj == null) {
+            // An update or delete that lands between the backend read and the put bumps the
+            // stamp, so the value read before it is not cached
+            long stamp = cache.stamp(id);
+            obj = dataSource.read(id);
+            if (obj != null) {
+                cache.put(obj, stamp);
+            }
+        }
+        return obj;
     }
 
     public List<T> readAll() {
         return dataSource.readAll();
     }
 
+    public List<T> query(Query<T> query) {
+        return dataSource.query(query);
+    }
+
+    public Stream<T> stream(int fetchSize) {
+        return dataSource.stream(fetchSize);
+    }
+
+    public void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        dataSource.forEachBatch(batchSize, sink);
+    }
+
     public void update(Integer id, T obj) {
         dataSource.update(id, obj);
+        if (cache != null) {
+            cache.invalidate(id);
+            cache.invalidateObject(obj);
+        }
     }
 
     public void delete(Integer id) {
         dataSource.delete(id);
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    // Pushes writes buffered by the backend (e.g. a WriteBehindQueue) through to storage
+    public void flush() {
+        if (dataSource instanceof Flushable) {
+            try {
+                ((Flushable) dataSource).flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void force() {
+        dataSource.force();
+    }
+
+    public void createAll(Collection<T> objs) {
+        dataSource.createAll(objs);
+        if (cache != null) {
+            objs.forEach(cache::invalidateObject);
+        }
+    }
+
+    public void updateAll(Map<Integer, T> objs) {
+        dataSource.updateAll(objs);
+        if (cache != null) {
+            objs.keySet().forEach(cache::invalidate);
+            objs.values().forEach(cache::invalidateObject);
+        }
+    }
+
+    public void deleteAll(Collection<Integer> ids) {
+        dataSource.deleteAll(ids);
+        if (cache != null) {
+            ids.forEach(cache::invalidate);
+        }
     }
 }
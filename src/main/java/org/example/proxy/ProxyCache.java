@@ -0,0 +1,316 @@
+package org.example.proxy;
+
+import org.example.storage.IntObjectMap;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// Bounded id -> record cache used by Proxy. The bound is a total weight; with the default
+// weigher every entry weighs 1, so the bound is an entry count, and a size estimating weigher
+// turns it into a byte limit.
+//
+// A read that misses takes a stamp() before going to the backend and caches what it read with
+// put(obj, stamp). Every invalidation bumps the stamp of the id's stripe, so a value read before
+// a concurrent update or delete is dropped instead of being cached after the invalidation.
+public class ProxyCache<T> {
+    // Invalidation counters are striped by id so they take constant memory
+    private static final int STAMP_STRIPES = 1024;
+
+    public enum EvictionPolicy {
+        // Evict the least recently used entry
+        LRU,
+        // W-TinyLFU: new entries land in a small LRU window and only move into the main area
+        // when a frequency sketch says they are used more often than the entry they would evict
+        TINY_LFU
+    }
+
+    private final Function<T, Integer> idOf;
+    private final ToLongFunction<T> weigher;
+    private final EvictionPolicy policy;
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    // One int keyed table for both areas; each entry also sits on the recency list of its area
+    private final IntObjectMap<Entry<T>> entries = new IntObjectMap<>();
+    private final Entry<T> window = Entry.list();
+    private final Entry<T> main = Entry.list();
+    private final FrequencySketch sketch;
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private long windowWeight;
+    private long mainWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public ProxyCache(Function<T, Integer> idOf, long maxEntries) {
+        this(idOf, maxEntries, obj -> 1L, EvictionPolicy.LRU);
+    }
+
+    public ProxyCache(Function<T, Integer> idOf, long maxWeight, ToLongFunction<T> weigher, EvictionPolicy policy) {
+        this.idOf = idOf;
+        this.weigher = weigher;
+        this.policy = policy;
+        this.maxWeight = maxWeight;
+        // One percent of the capacity goes to the admission window, as in W-TinyLFU
+        this.maxWindowWeight = policy == EvictionPolicy.TINY_LFU ? Math.max(1, maxWeight / 100) : 0;
+        this.sketch = policy == EvictionPolicy.TINY_LFU ? new FrequencySketch(maxWeight) : null;
+    }
+
+    public synchronized T get(Integer id) {
+        return id == null ? null : get(id.intValue());
+    }
+
+    public synchronized T get(int id) {
+        if (sketch != null) {
+            sketch.increment(id);
+        }
+        Entry<T> entry = entries.get(id);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        entry.unlink();
+        entry.linkBefore(entry.inWindow ? window : main);
+        return entry.value;
+    }
+
+    // Invalidation stamp of id; see put(obj, stamp)
+    public synchronized long stamp(int id) {
+        return stamps[stripeOf(id)];
+    }
+
+    // Caches obj only if its id has not been invalidated since stamp was taken, and returns
+    // whether it did. False positives from other ids on the same stripe only skip caching.
+    public synchronized boolean put(T obj, long stamp) {
+        Integer id = idOf.apply(obj);
+        if (id == null || stamps[stripeOf(id)] != stamp) {
+            return false;
+        }
+        put(obj);
+        return true;
+    }
+
+    public synchronized void put(T obj) {
+        Integer boxedId = idOf.apply(obj);
+        if (boxedId == null) {
+            return;
+        }
+        int id = boxedId;
+        invalidate(id);
+        long weight = weigher.applyAsLong(obj);
+        if (weight > maxWeight) {
+            return;
+        }
+        Entry<T> entry = new Entry<>(id, obj, weight);
+        entries.put(id, entry);
+        if (policy == EvictionPolicy.LRU) {
+            entry.linkBefore(main);
+            mainWeight += weight;
+            while (mainWeight > maxWeight && evictEldest()) {
+                // keep evicting
+            }
+            return;
+        }
+        entry.inWindow = true;
+        entry.linkBefore(window);
+        windowWeight += weight;
+        while (windowWeight > maxWindowWeight && window.next != window) {
+            Entry<T> candidate = window.next;
+            candidate.unlink();
+            candidate.inWindow = false;
+            windowWeight -= candidate.weight;
+            admit(candidate);
+        }
+    }
+
+    public synchronized void invalidate(Integer id) {
+        if (id != null) {
+            invalidate(id.intValue());
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        stamps[stripeOf(id)]++;
+        Entry<T> entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        entry.unlink();
+        if (entry.inWindow) {
+            windowWeight -= entry.weight;
+        } else {
+            mainWeight -= entry.weight;
+        }
+    }
+
+    // Drops the entry stored under the id of obj
+    public synchronized void invalidateObject(T obj) {
+        invalidate(idOf.apply(obj));
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i]++;
+        }
+        entries.clear();
+        window.next = window.prev = window;
+        main.next = main.prev = main;
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    public synchronized long size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProxyCache{" +
+                "policy=" + policy +
+                ", size=" + size() +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                ", hitRate=" + String.format("%.3f", getHitRate()) +
+                '}';
+    }
+
+    // Moves an entry leaving the window into the main area if it is more popular than the
+    // entries it would push out, otherwise drops it
+    private void admit(Entry<T> candidate) {
+        long mainCapacity = maxWeight - maxWindowWeight;
+        while (mainWeight + candidate.weight > mainCapacity && main.next != main) {
+            Entry<T> victim = main.next;
+            if (sketch.frequency(candidate.id) <= sketch.frequency(victim.id)) {
+                entries.remove(candidate.id);
+                evictionCount++;
+                return;
+            }
+            evictEldest();
+        }
+        candidate.linkBefore(main);
+        mainWeight += candidate.weight;
+    }
+
+    private boolean evictEldest() {
+        Entry<T> entry = main.next;
+        if (entry == main) {
+            return false;
+        }
+        entry.unlink();
+        entries.remove(entry.id);
+        mainWeight -= entry.weight;
+        evictionCount++;
+        return true;
+    }
+
+    private static int stripeOf(int id) {
+        return id & (STAMP_STRIPES - 1);
+    }
+
+    // Node of an intrusive circular recency list; the sentinel's next is the eldest entry
+    private static class Entry<U> {
+        private final int id;
+        private final U value;
+        private final long weight;
+        private boolean inWindow;
+        private Entry<U> prev;
+        private Entry<U> next;
+
+        Entry(int id, U value, long weight) {
+            this.id = id;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        static <U> Entry<U> list() {
+            Entry<U> sentinel = new Entry<>(0, null, 0);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        void linkBefore(Entry<U> sentinel) {
+            prev = sentinel.prev;
+            next = sentinel;
+            sentinel.prev.next = this;
+            sentinel.prev = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+
+    // Count-min sketch with 4-bit counters that are halved periodically so old popularity fades
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final long sampleSize;
+        private long additions;
+
+        FrequencySketch(long capacity) {
+            int width = Integer.highestOneBit((int) Math.min(1 << 24, Math.max(16, capacity)) - 1) << 1;
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10L * Math.max(16, capacity);
+        }
+
+        void increment(int hash) {
+            for (int row = 0; row < DEPTH; row++) {
+                int slot = slot(hash, row);
+                if (counters[row][slot] < 15) {
+                    counters[row][slot]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[row][slot(hash, row)]);
+            }
+            return min;
+        }
+
+        private int slot(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package org.example.proxy;
+
+import org.example.storage.CRUD;
+import org.example.storage.Query;
+
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Write-behind buffer in front of a backend. Mutations are queued in memory, coalesced per id
+// (the last write wins) and handed to the backend as one createAll/updateAll/deleteAll batch
+// once maxPending ids are queued, every flushInterval, or on an explicit flush().
+// Reads by id see the queued writes; readAll and stream flush first.
+//
+// A batch the backend rejects by throwing, as every backend does when a write fails, is put
+// back in front of the writes queued since, so acknowledged writes are never dropped. flush(), force() and close() throw when their batch fails; flushes
+// run by the timer or a full queue keep the failure for the next flush() to report.
+public class WriteBehindQueue<T> implements CRUD<T>, Flushable, AutoCloseable {
+    public static final int DEFAULT_MAX_PENDING = 1000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    public enum Durability {
+        // flush() only schedules the batch, records reach the backend in the background
+        NONE,
+        // flush() returns once the batch has been written to the backend
+        FLUSH,
+        // flush() also forces the backend to stable storage
+        FSYNC
+    }
+
+    private enum Kind {
+        CREATE,
+        UPDATE,
+        DELETE,
+        // Delete whatever the backend holds for the id, then create the queued record
+        REPLACE
+    }
+
+    private final CRUD<T> dataSource;
+    private final Function<T, Integer> idOf;
+    private final int maxPending;
+    private final Durability durability;
+    private final ScheduledExecutorService flusher;
+    // Serializes batches so they reach the backend in the order they were queued
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Guarded by this: writes being queued and the batch currently being written
+    private Map<Integer, Operation<T>> pending = new LinkedHashMap<>();
+    private Map<Integer, Operation<T>> inFlight = Collections.emptyMap();
+    // Failure of the last background flush, cleared once a batch gets through
+    private RuntimeException failure;
+    private boolean closed;
+
+    public WriteBehindQueue(CRUD<T> dataSource, Function<T, Integer> idOf) {
+        this(dataSource, idOf, DEFAULT_MAX_PENDING, DEFAULT_FLUSH_INTERVAL_MILLIS, Durability.FLUSH);
+    }
+
+    public WriteBehindQueue(CRUD<T> dataSource, Function<T, Integer> idOf, int maxPending,
+                            long flushIntervalMillis, Durability durability) {
+        this.dataSource = dataSource;
+        this.idOf = idOf;
+        this.maxPending = Math.max(1, maxPending);
+        this.durability = durability;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushIntervalMillis > 0) {
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void create(T obj) {
+        Integer id = idOf.apply(obj);
+        boolean full;
+        synchronized (this) {
+            full = enqueue(id, new Operation<>(Kind.CREATE, obj));
+        }
+        if (full) {
+            flushQuietly();
+        }
+    }
+
+    @Override
+    public T read(Integer id) {
+        Operation<T> queued;
+        synchronized (this) {
+            queued = pending.get(id);
+            if (queued == null) {
+                queued = inFlight.get(id);
+            }
+        }
+        if (queued == null) {
+            return dataSource.read(id);
+        }
+        switch (queued.kind) {
+            case DELETE:
+                return null;
+            case UPDATE:
+                // An update only takes effect if the backend holds the record
+                return dataSource.read(id) != null ? queued.obj : null;
+            default:
+                return queued.obj;
+        }
+    }
+
+    @Override
+    public List<T> readAll() {
+        flushQuietly();
+        return dataSource.readAll();
+    }
+
+    @Override
+    public List<T> query(Query<T> query) {
+        flushQuietly();
+        return dataSource.query(query);
+    }
+
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        flushQuietly();
+        return dataSource.stream(fetchSize);
+    }
+
+    @Override
+    public void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        flushQuietly();
+        dataSource.forEachBatch(batchSize, sink);
+    }
+
+    @Override
+    public void update(Integer id, T obj) {
+        updateAll(Collections.singletonMap(id, obj));
+    }
+
+    @Override
+    public void delete(Integer id) {
+        deleteAll(Collections.singletonList(id));
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        for (T obj : objs) {
+            create(obj);
+        }
+    }
+
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        Map<Integer, T> moved = new LinkedHashMap<>();
+        boolean full = false;
+        synchronized (this) {
+            for (Map.Entry<Integer, T> entry : objs.entrySet()) {
+                Integer id = entry.getKey();
+                if (!id.equals(idOf.apply(entry.getValue()))) {
+                    moved.put(id, entry.getValue());
+                    continue;
+                }
+                full |= enqueue(id, new Operation<>(Kind.UPDATE, entry.getValue()));
+            }
+        }
+        if (!moved.isEmpty()) {
+            // Updates that change the id touch two records, so they bypass the queue, but only
+            // once everything queued before them is written
+            flushPending();
+            dataSource.updateAll(moved);
+        } else if (full) {
+            flushQuietly();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        boolean full = false;
+        synchronized (this) {
+            for (Integer id : ids) {
+                full |= enqueue(id, new Operation<>(Kind.DELETE, null));
+            }
+        }
+        if (full) {
+            flushQuietly();
+        }
+    }
+
+    @Override
+    public void force() {
+        flushPending();
+        dataSource.force();
+    }
+
+    // Writes the queued mutations; how long this blocks depends on the durability policy.
+    // Without durability a failed background flush is reported by the next call, and once the
+    // queue is closed the batch is written on the calling thread.
+    @Override
+    public void flush() {
+        if (durability == Durability.NONE) {
+            RuntimeException earlier;
+            synchronized (this) {
+                earlier = failure;
+                failure = null;
+            }
+            if (earlier != null) {
+                throw earlier;
+            }
+            try {
+                flusher.execute(this::flushQuietly);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Closed, there is no background thread left
+            }
+        }
+        flushPending();
+        if (durability == Durability.FSYNC) {
+            dataSource.force();
+        }
+    }
+
+    // Number of ids with a mutation that has not reached the backend yet
+    public synchronized int pendingCount() {
+        return pending.size() + inFlight.size();
+    }
+
+    // Writes everything still queued and stops the background flusher. The backend stays open.
+    // If the last batch fails it stays queued and a later flush() retries it.
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        flushPending();
+        if (durability == Durability.FSYNC) {
+            dataSource.force();
+        }
+    }
+
+    // Folds operation into whatever is queued for id; returns true once the queue has grown to
+    // maxPending ids
+    private boolean enqueue(Integer id, Operation<T> operation) {
+        pending.put(id, merge(pending.remove(id), operation));
+        return pending.size() >= maxPending;
+    }
+
+    // The net effect of older followed by newer on the same id
+    private static <U> Operation<U> merge(Operation<U> older, Operation<U> newer) {
+        if (older == null) {
+            return newer;
+        }
+        switch (newer.kind) {
+            case CREATE:
+                // A create after anything but a create has to clear what the backend holds first
+                return older.kind == Kind.CREATE ? newer : new Operation<>(Kind.REPLACE, newer.obj);
+            case UPDATE:
+                // Updating a queued create or replace just swaps the record it writes; updating
+                // a queued delete changes nothing
+                return older.kind == Kind.DELETE ? older : new Operation<>(older.kind, newer.obj);
+            default:
+                return newer;
+        }
+    }
+
+    // Flushes that nobody waits on keep a failure for the next flush() instead of throwing it
+    // at an unrelated caller
+    private void flushQuietly() {
+        try {
+            flushPending();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                failure = e;
+            }
+        }
+    }
+
+    private void flushPending() {
+        flushLock.lock();
+        try {
+            Map<Integer, Operation<T>> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<>();
+            }
+            boolean written = false;
+            try {
+                writeBatch(batch);
+                written = true;
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Writing " + batch.size() + " queued ids failed; they stay queued", e);
+            } finally {
+                synchronized (this) {
+                    if (written) {
+                        failure = null;
+                    } else {
+                        requeue(batch);
+                    }
+                    inFlight = Collections.emptyMap();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Puts a failed batch back in front of the writes queued while it was in flight. Part of it
+    // may have reached the backend, so creates are retried as replaces, which are idempotent.
+    private void requeue(Map<Integer, Operation<T>> batch) {
+        Map<Integer, Operation<T>> newer = pending;
+        pending = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Operation<T>> entry : batch.entrySet()) {
+            Operation<T> operation = entry.getValue();
+            if (operation.kind == Kind.CREATE) {
+                operation = new Operation<>(Kind.REPLACE, operation.obj);
+            }
+            pending.put(entry.getKey(), operation);
+        }
+        for (Map.Entry<Integer, Operation<T>> entry : newer.entrySet()) {
+            enqueue(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Every id appears once in the batch, so the three backend calls do not interfere
+    private void writeBatch(Map<Integer, Operation<T>> batch) {
+        List<Integer> deleted = new ArrayList<>();
+        List<T> created = new ArrayList<>();
+        Map<Integer, T> updated = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Operation<T>> entry : batch.entrySet()) {
+            Operation<T> operation = entry.getValue();
+            switch (operation.kind) {
+                case CREATE:
+                    created.add(operation.obj);
+                    break;
+                case UPDATE:
+                    updated.put(entry.getKey(), operation.obj);
+                    break;
+                case DELETE:
+                    deleted.add(entry.getKey());
+                    break;
+                case REPLACE:
+                    deleted.add(entry.getKey());
+                    created.add(operation.obj);
+                    break;
+            }
+        }
+        if (!deleted.isEmpty()) {
+            dataSource.deleteAll(deleted);
+        }
+        if (!created.isEmpty()) {
+            dataSource.createAll(created);
+        }
+        if (!updated.isEmpty()) {
+            dataSource.updateAll(updated);
+        }
+    }
+
+    private static class Operation<U> {
+        private final Kind kind;
+        private final U obj;
+
+        Operation(Kind kind, U obj) {
+            this.kind = kind;
+            this.obj = obj;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.service;
+
+import org.example.storage.CRUD;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Streams every record of one backend into another. A reader thread scans the source with
+// forEachBatch and hands the batches over through a bounded queue, so decoding the source
+// overlaps with writing the target, and a slow target stalls the reader instead of letting
+// batches pile up. Line files (CSV, TXT, JSON Lines) parse a few chunks ahead in parallel on
+// the common ForkJoin pool, so besides queueDepth + 2 batches only those chunks are in memory.
+public class RecordCopier<T> {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_QUEUE_DEPTH = 4;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 1000;
+
+    public interface ProgressListener {
+        // Called at most once per progress interval while copying, and once more when done
+        void progress(long records, long elapsedNanos, boolean done);
+    }
+
+    private final int batchSize;
+    private final int queueDepth;
+    private final long progressIntervalNanos;
+
+    public RecordCopier() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_DEPTH, DEFAULT_PROGRESS_INTERVAL_MILLIS);
+    }
+
+    public RecordCopier(int batchSize, int queueDepth, long progressIntervalMillis) {
+        this.batchSize = Math.max(1, batchSize);
+        this.queueDepth = Math.max(1, queueDepth);
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+    }
+
+    // Appends the records of source to target with createAll, one batch at a time, and
+    // returns the number of records copied
+    public long copy(CRUD<T> source, CRUD<T> target, ProgressListener listener) throws InterruptedException {
+        BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(queueDepth);
+        List<T> end = new ArrayList<>(0);
+        Throwable[] failure = new Throwable[1];
+        Thread reader = new Thread(() -> {
+            try {
+                source.forEachBatch(batchSize, queue::put);
+            } catch (InterruptedException e) {
+                // The writer gave up; nobody is waiting for more batches
+                return;
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+            try {
+                queue.put(end);
+            } catch (InterruptedException e) {
+                // Same as above
+            }
+        }, "record-copier-reader");
+        reader.setDaemon(true);
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long copied = 0;
+        reader.start();
+        try {
+            for (List<T> batch = queue.take(); batch != end; batch = queue.take()) {
+                target.createAll(batch);
+                copied += batch.size();
+                long now = System.nanoTime();
+                if (listener != null && now - lastReport >= progressIntervalNanos) {
+                    listener.progress(copied, now - start, false);
+                    lastReport = now;
+                }
+            }
+        } finally {
+            reader.interrupt();
+            reader.join();
+        }
+        // The join above makes the reader's write to failure visible here
+        if (failure[0] != null) {
+            throw new IllegalStateException("Reading the source failed after " + copied + " records", failure[0]);
+        }
+        if (listener != null) {
+            listener.progress(copied, System.nanoTime() - start, true);
+        }
+        return copied;
+    }
+}
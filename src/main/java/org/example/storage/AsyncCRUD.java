@@ -0,0 +1,28 @@
+package org.example.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Non-blocking counterpart of CRUD; every call returns at once and completes the future when
+// the backend is done, exceptionally if the backend threw
+public interface AsyncCRUD<T> {
+    CompletableFuture<Void> createAsync(T obj);
+
+    CompletableFuture<T> readAsync(Integer id);
+
+    CompletableFuture<List<T>> readAllAsync();
+
+    CompletableFuture<List<T>> queryAsync(Query<T> query);
+
+    CompletableFuture<Void> updateAsync(Integer id, T obj);
+
+    CompletableFuture<Void> deleteAsync(Integer id);
+
+    CompletableFuture<Void> createAllAsync(Collection<T> objs);
+
+    CompletableFuture<Void> updateAllAsync(Map<Integer, T> objs);
+
+    CompletableFuture<Void> deleteAllAsync(Collection<Integer> ids);
+}
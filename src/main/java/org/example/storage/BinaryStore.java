@@ -0,0 +1,544 @@
+package org.example.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// Compact binary record store. After a 12 byte header (magic, version, page size) the file is
+// a sequence of records, each a varint tag, a 4 byte id and, for live records, the payload
+// written by a RecordCodec. The tag is 0 for padding up to the end of the page, 1 for a
+// tombstone and payload length + 2 otherwise. A record never crosses a page boundary unless
+// it is larger than a page, so reading one record by id touches a single page.
+// Like SerializedObject the file is append only: update appends a new version, delete a
+// tombstone, an in-memory id directory points at the latest version of every record and a
+// background compaction drops the rest. Reads share a read/write lock, writes take it
+// exclusively.
+public class BinaryStore<T> implements CRUD<T> {
+    private static final int MAGIC = 0x42504753; // "BPGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int TAG_PADDING = 0;
+    private static final int TAG_TOMBSTONE = 1;
+    private static final int TAG_RECORD = 2;
+    private static final int ID_SIZE = 4;
+    private static final int MIN_PAGE_SIZE = 64;
+    // Records encoded per buffer when the whole file is rewritten
+    private static final int WRITE_BATCH = 4096;
+
+    private final Path path;
+    private final RecordCodec<T> codec;
+    private final double compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntLongMap directory = new IntLongMap(-1L);
+    private int pageSize;
+    private long size;
+    private long recordCount;
+    private boolean compactionScheduled;
+
+    public BinaryStore(String filename, RecordCodec<T> codec) {
+        this(filename, codec, new StorageOptions());
+    }
+
+    public BinaryStore(String filename, RecordCodec<T> codec, StorageOptions options) {
+        this.path = Paths.get(filename);
+        this.codec = codec;
+        this.compactionThreshold = options.getCompactionThreshold();
+        // Only used for new files, existing files keep the page size in their header
+        this.pageSize = Math.max(MIN_PAGE_SIZE, options.getPageSize());
+        open();
+    }
+
+    @Override
+    public void create(T obj) {
+        createAll(Collections.singletonList(obj));
+    }
+
+    @Override
+    public T read(Integer id) {
+        return id == null ? null : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
+        lock.readLock().lock();
+        try {
+            long location = directory.get(id);
+            if (location < 0) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return codec.decode(id, RecordLocation.read(channel, location));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Pins the current file and a copy of the directory under the lock, then walks the file
+    // page by page without it, decoding only the versions the copy points at. Writers carry on
+    // meanwhile: appends land past the pinned size, and a compaction swaps in a new file while
+    // the open channel keeps reading the old one.
+    @Override
+    public List<T> readAll() {
+        FileChannel channel;
+        IntLongMap live;
+        long end;
+        lock.readLock().lock();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            live = directory.copy();
+            end = size;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (FileChannel pinned = channel) {
+            return readLive(pinned, end, live);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    private List<T> readAllLocked() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readLive(channel, size, directory);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    private List<T> readLive(FileChannel channel, long end, IntLongMap live) throws IOException {
+        List<T> objects = new ArrayList<>(live.size());
+        scan(channel, end, (id, offset, payload) -> {
+            if (payload == null) {
+                return;
+            }
+            long location = live.get(id);
+            if (location >= 0 && RecordLocation.offsetOf(location) == offset) {
+                objects.add(codec.decode(id, payload));
+            }
+        });
+        return objects;
+    }
+
+    // Snapshots the live record locations and reads exactly those records in file order. The
+    // id sits right before the payload, so each record is one read of id and payload.
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        return streamBetween(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // Id ranges are cut from the directory, so records outside the range are never read
+    @Override
+    public List<T> query(Query<T> query) {
+        try (Stream<T> records = streamBetween(query.getFromId(), query.getToId())) {
+            return query.apply(records);
+        }
+    }
+
+    private Stream<T> streamBetween(int fromId, int toId) {
+        FileChannel channel;
+        long[] live;
+        lock.readLock().lock();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            live = directory.valuesBetween(fromId, toId);
+            Arrays.sort(live);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Stream.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] next = {0};
+        return RecordStreams.of(() -> {
+            if (next[0] == live.length) {
+                return null;
+            }
+            long location = live[next[0]++];
+            ByteBuffer record = RecordLocation.read(channel, RecordLocation.pack(
+                    RecordLocation.offsetOf(location) - ID_SIZE, RecordLocation.lengthOf(location) + ID_SIZE));
+            return codec.decode(record.getInt(), record);
+        }, channel);
+    }
+
+    @Override
+    public void update(Integer id, T obj) {
+        updateAll(Collections.singletonMap(id, obj));
+    }
+
+    @Override
+    public void delete(Integer id) {
+        deleteAll(Collections.singletonList(id));
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        List<Integer> ids = new ArrayList<>(objs.size());
+        List<T> records = new ArrayList<>(objs);
+        for (T obj : objs) {
+            ids.add(codec.idOf(obj));
+        }
+        lock.writeLock().lock();
+        try {
+            appendRecords(ids, records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        List<Integer> ids = new ArrayList<>(objs.size());
+        List<T> records = new ArrayList<>(objs.size());
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, T> entry : objs.entrySet()) {
+                if (!directory.containsKey(entry.getKey())) {
+                    continue;
+                }
+                int newId = codec.idOf(entry.getValue());
+                if (entry.getKey() != newId) {
+                    // The record moves to a new id, so the old one has to go
+                    ids.add(entry.getKey());
+                    records.add(null);
+                }
+                ids.add(newId);
+                records.add(entry.getValue());
+            }
+            appendRecords(ids, records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        Set<Integer> unique = new LinkedHashSet<>(ids);
+        lock.writeLock().lock();
+        try {
+            unique.removeIf(id -> !directory.containsKey(id));
+            appendRecords(new ArrayList<>(unique), Collections.nCopies(unique.size(), null));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void force() {
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Encodes the records at the end of the file with one positioned write; a null record is
+    // a tombstone for the id at the same position
+    private void appendRecords(List<Integer> ids, List<T> records) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long[] locations = new long[ids.size()];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = encode(ids, records, size, locations);
+            write(channel, buffer, size);
+            size += buffer.limit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recordCount += ids.size();
+        apply(directory, ids, locations);
+        scheduleCompactionIfNeeded();
+    }
+
+    // Lays the records out from position start, padding to the next page where a record would
+    // otherwise cross a page boundary, and stores the payload location of every record in
+    // locations (-1 for tombstones)
+    private ByteBuffer encode(List<Integer> ids, List<T> records, long start, long[] locations) throws IOException {
+        int[] payloadSizes = new int[ids.size()];
+        long position = start;
+        for (int i = 0; i < ids.size(); i++) {
+            T obj = records.get(i);
+            int payloadSize = obj == null ? 0 : codec.sizeOf(obj);
+            payloadSizes[i] = payloadSize;
+            position += paddingBefore(position, recordSize(obj, payloadSize)) + recordSize(obj, payloadSize);
+        }
+        if (position - start > Integer.MAX_VALUE) {
+            throw new IOException("Batch of " + (position - start) + " bytes is too large");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (position - start));
+        position = start;
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            T obj = records.get(i);
+            int recordSize = recordSize(obj, payloadSizes[i]);
+            int padding = paddingBefore(position, recordSize);
+            if (padding > 0) {
+                // The buffer is zero filled, so only the padding tag needs writing
+                buffer.put((byte) TAG_PADDING);
+                buffer.position(buffer.position() + padding - 1);
+                position += padding;
+            }
+            if (obj == null) {
+                BinaryFields.putVarInt(buffer, TAG_TOMBSTONE);
+                buffer.putInt(id);
+                locations[i] = -1L;
+            } else {
+                BinaryFields.putVarInt(buffer, payloadSizes[i] + TAG_RECORD);
+                buffer.putInt(id);
+                long payloadOffset = start + buffer.position();
+                int before = buffer.position();
+                codec.encode(obj, buffer);
+                if (buffer.position() - before != payloadSizes[i]) {
+                    throw new IOException("Codec wrote " + (buffer.position() - before)
+                            + " bytes for record " + id + " but sized it at " + payloadSizes[i]);
+                }
+                locations[i] = RecordLocation.pack(payloadOffset, payloadSizes[i]);
+            }
+            position += recordSize;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Applies the locations encode produced, in order, so the last record of an id wins
+    private static void apply(IntLongMap directory, List<Integer> ids, long[] locations) {
+        for (int i = 0; i < locations.length; i++) {
+            if (locations[i] < 0) {
+                directory.remove(ids.get(i));
+            } else {
+                directory.put(ids.get(i), locations[i]);
+            }
+        }
+    }
+
+    private static int recordSize(Object obj, int payloadSize) {
+        return obj == null ? BinaryFields.sizeOfVarInt(TAG_TOMBSTONE) + ID_SIZE
+                : BinaryFields.sizeOfVarInt(payloadSize + TAG_RECORD) + ID_SIZE + payloadSize;
+    }
+
+    // Bytes of padding needed before a record of the given size written at position. Records
+    // larger than a page start on a fresh page and run on from there.
+    private int paddingBefore(long position, int recordSize) {
+        int used = (int) (position % pageSize);
+        if (used == 0) {
+            return 0;
+        }
+        int remaining = pageSize - used;
+        return recordSize <= remaining ? 0 : remaining;
+    }
+
+    // Reads the file one page at a time and hands every record to the visitor; the payload is
+    // null for tombstones and only valid during the call
+    // Visits the records in [HEADER_SIZE, end) and returns where the last complete one ends.
+    // A record cut off by end, as a crash during an append leaves it, is not visited.
+    private long scan(FileChannel channel, long end, RecordVisitor visitor) throws IOException {
+        ByteBuffer page = ByteBuffer.allocate(pageSize);
+        long position = HEADER_SIZE;
+        long complete = HEADER_SIZE;
+        while (position < end) {
+            long pageEnd = Math.min(end, (position / pageSize + 1) * pageSize);
+            page.clear().limit((int) (pageEnd - position));
+            read(channel, page, position);
+            page.flip();
+            long next = pageEnd;
+            while (page.hasRemaining()) {
+                if (!hasVarInt(page)) {
+                    return complete;
+                }
+                int tag = BinaryFields.getVarInt(page);
+                if (tag == TAG_PADDING) {
+                    break;
+                }
+                if (page.remaining() < ID_SIZE) {
+                    return complete;
+                }
+                int id = page.getInt();
+                if (tag == TAG_TOMBSTONE) {
+                    visitor.visit(id, position + page.position(), null);
+                    complete = position + page.position();
+                    continue;
+                }
+                int length = tag - TAG_RECORD;
+                long payloadOffset = position + page.position();
+                if (payloadOffset + length > end) {
+                    return complete;
+                }
+                if (length > page.remaining()) {
+                    // Larger than a page: read it on its own and carry on right after it
+                    visitor.visit(id, payloadOffset, RecordLocation.read(channel, RecordLocation.pack(payloadOffset, length)));
+                    next = payloadOffset + length;
+                    complete = next;
+                    break;
+                }
+                ByteBuffer payload = page.slice(page.position(), length);
+                page.position(page.position() + length);
+                visitor.visit(id, payloadOffset, payload);
+                complete = position + page.position();
+            }
+            position = next;
+        }
+        return complete;
+    }
+
+    // True when a whole varint starts at the buffer's position
+    private static boolean hasVarInt(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || !Compactor.isDue(recordCount, directory.size(), compactionThreshold)) {
+            return;
+        }
+        compactionScheduled = true;
+        Compactor.schedule(this::compact);
+    }
+
+    // Rewrites the file with only the live version of every record
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            compactionScheduled = false;
+            writeAll(readAllLocked());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Reads the header and rebuilds the id directory from the record headers
+    private void open() {
+        try {
+            if (Files.notExists(path) || Files.size(path) == 0) {
+                writeAll(Collections.emptyList());
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                read(channel, header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(path + " is not a binary record store");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException(path + " has unsupported version " + version);
+                }
+                pageSize = header.getInt();
+                size = scan(channel, channel.size(), (id, offset, payload) -> {
+                    recordCount++;
+                    if (payload == null) {
+                        directory.remove(id);
+                    } else {
+                        directory.put(id, RecordLocation.pack(offset, payload.remaining()));
+                    }
+                });
+                // Drop a record torn by a crash so the next append lines up behind the last whole one
+                if (size < channel.size()) {
+                    channel.truncate(size);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Writes a fresh file holding the given records and swaps it in atomically
+    private void writeAll(List<T> objects) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        IntLongMap locations = new IntLongMap(-1L, objects.size());
+        long position = HEADER_SIZE;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(pageSize).flip();
+                write(channel, header, 0);
+                for (int from = 0; from < objects.size(); from += WRITE_BATCH) {
+                    List<T> batch = objects.subList(from, Math.min(objects.size(), from + WRITE_BATCH));
+                    List<Integer> ids = new ArrayList<>(batch.size());
+                    for (T obj : batch) {
+                        ids.add(codec.idOf(obj));
+                    }
+                    long[] batchLocations = new long[ids.size()];
+                    ByteBuffer buffer = encode(ids, batch, position, batchLocations);
+                    write(channel, buffer, position);
+                    apply(locations, ids, batchLocations);
+                    position += buffer.limit();
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        directory.clear();
+        directory.putAll(locations);
+        size = position;
+        recordCount = objects.size();
+    }
+
+    // Fills the buffer, which starts at position 0, from the given file position
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // Converts records to and from their binary payload; the id is stored by the store itself
+    public interface RecordCodec<T> {
+        int idOf(T obj);
+
+        // Exact number of bytes encode will write for obj
+        int sizeOf(T obj);
+
+        void encode(T obj, ByteBuffer buffer);
+
+        T decode(int id, ByteBuffer buffer);
+    }
+
+    private interface RecordVisitor {
+        void visit(int id, long payloadOffset, ByteBuffer payload) throws IOException;
+    }
+}
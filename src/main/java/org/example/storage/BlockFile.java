@@ -0,0 +1,449 @@
+package org.example.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Text file stored as a run of independently compressed blocks. Every block is a 12 byte header
+// (magic, raw length, packed length) followed by a zlib stream, i.e. Deflate with an Adler-32
+// check. Line oriented files only cut blocks after a newline, so a line never spans two blocks.
+//
+// Offsets handed out by the cursors are positions in the uncompressed text, so RecordLocations
+// and the line index work as they do for plain files. The block index below maps them back to
+// blocks; it lives in memory and is built by reading the block headers, extended when blocks
+// are appended and dropped when the file is rewritten. Appends only ever add blocks at the end.
+final class BlockFile {
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    private static final int MAGIC = 0x424C4B5A; // "BLKZ"
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+
+    private final Path path;
+    // File position and uncompressed start of every block indexed so far
+    private long[] positions = new long[64];
+    private long[] rawStarts = new long[64];
+    private int count;
+    private long end;
+    private long rawSize;
+
+    BlockFile(Path path) {
+        this.path = path;
+    }
+
+    // Forgets the block index after the file has been replaced
+    synchronized void reset() {
+        count = 0;
+        end = 0;
+        rawSize = 0;
+    }
+
+    // The blocks of the file behind channel, which must be the current file
+    synchronized Snapshot snapshot(FileChannel channel) throws IOException {
+        refresh(channel);
+        long[] blockPositions = Arrays.copyOf(positions, count + 1);
+        long[] blockStarts = Arrays.copyOf(rawStarts, count + 1);
+        blockPositions[count] = end;
+        blockStarts[count] = rawSize;
+        return new Snapshot(blockPositions, blockStarts);
+    }
+
+    // Length of the uncompressed text, i.e. the offset the next appended line will get
+    synchronized long rawSize(FileChannel channel) throws IOException {
+        refresh(channel);
+        return rawSize;
+    }
+
+    // Indexes the blocks appended since the last call by reading their headers
+    private void refresh(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < end) {
+            reset();
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (end < size) {
+            header.clear();
+            while (header.hasRemaining()) {
+                if (channel.read(header, end + header.position()) < 0) {
+                    throw new EOFException("Truncated block header at offset " + end + " of " + path);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(path + " is not block compressed or is corrupt at offset " + end);
+            }
+            int rawLength = header.getInt();
+            int packedLength = header.getInt();
+            long next = end + HEADER_SIZE + packedLength;
+            if (next > size) {
+                throw new EOFException("Truncated block at offset " + end + " of " + path);
+            }
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                rawStarts = Arrays.copyOf(rawStarts, count * 2);
+            }
+            positions[count] = end;
+            rawStarts[count] = rawSize;
+            count++;
+            end = next;
+            rawSize += rawLength;
+        }
+    }
+
+    // Decompresses every block on the common ForkJoin pool and parses its lines; the results
+    // are concatenated in file order. channel stays open.
+    static <T> List<T> parse(FileChannel channel, Snapshot snapshot, ParallelLines.LineParser<T> parser) throws IOException {
+        List<List<T>> parts;
+        try {
+            parts = IntStream.range(0, snapshot.count()).parallel()
+                    .mapToObj(block -> {
+                        try {
+                            return parseBlock(channel, snapshot, block, parser);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int total = 0;
+        for (List<T> part : parts) {
+            total += part.size();
+        }
+        List<T> objects = new ArrayList<>(total);
+        for (List<T> part : parts) {
+            objects.addAll(part);
+        }
+        return objects;
+    }
+
+    // Hands the records to sink in file order, batchSize at a time, decompressing and parsing a
+    // bounded number of blocks ahead in parallel. channel stays open.
+    static <T> void parse(FileChannel channel, Snapshot snapshot, ParallelLines.LineParser<T> parser, int batchSize,
+                          CRUD.BatchSink<T> sink) throws IOException, InterruptedException {
+        ParallelLines.inOrder(snapshot.count(), block -> parseBlock(channel, snapshot, block, parser), batchSize, sink);
+    }
+
+    private static <T> List<T> parseBlock(FileChannel channel, Snapshot snapshot, int block,
+                                          ParallelLines.LineParser<T> parser) throws IOException {
+        List<T> objects = new ArrayList<>();
+        Cursor cursor = new Cursor(channel, snapshot, block, block + 1);
+        FieldTokenizer tokens = new FieldTokenizer(',');
+        while (cursor.next()) {
+            T obj = parser.parse(cursor.buffer(), cursor.start(), cursor.length(), tokens);
+            if (obj != null) {
+                objects.add(obj);
+            }
+        }
+        return objects;
+    }
+
+    // Reads and decompresses one block with a single positioned read
+    private static ByteBuffer inflate(FileChannel channel, Snapshot snapshot, int block) throws IOException {
+        long position = snapshot.positions[block];
+        ByteBuffer packed = ByteBuffer.allocate((int) (snapshot.positions[block + 1] - position));
+        while (packed.hasRemaining()) {
+            if (channel.read(packed, position + packed.position()) < 0) {
+                throw new EOFException("Block at offset " + position + " lies past the end of the file");
+            }
+        }
+        packed.flip();
+        packed.getInt();
+        int rawLength = packed.getInt();
+        int packedLength = packed.getInt();
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed.array(), HEADER_SIZE, packedLength);
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished() && !inflater.needsInput() && !inflater.needsDictionary()) {
+                inflated += inflater.inflate(raw, inflated, rawLength - inflated);
+            }
+            if (inflated != rawLength) {
+                throw new IOException("Block at offset " + position + " is shorter than its header says");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block at offset " + position, e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    // Block positions and uncompressed starts of a pinned file, each with one extra entry for
+    // the end of the last block
+    static final class Snapshot {
+        private final long[] positions;
+        private final long[] rawStarts;
+
+        private Snapshot(long[] positions, long[] rawStarts) {
+            this.positions = positions;
+            this.rawStarts = rawStarts;
+        }
+
+        int count() {
+            return positions.length - 1;
+        }
+
+        long rawSize() {
+            return rawStarts[count()];
+        }
+
+        // Block holding the uncompressed offset, or -1 when it lies past the end
+        int blockOf(long rawOffset) {
+            if (rawOffset >= rawSize()) {
+                return -1;
+            }
+            int found = Arrays.binarySearch(rawStarts, 0, count(), rawOffset);
+            return found >= 0 ? found : -found - 2;
+        }
+    }
+
+    // Reads records by location, keeping the last decompressed block around so that reading
+    // locations in file order decompresses every block at most once
+    static final class Reader {
+        private final FileChannel channel;
+        private final Snapshot snapshot;
+        private int block = -1;
+        private ByteBuffer raw;
+
+        Reader(FileChannel channel, Snapshot snapshot) {
+            this.channel = channel;
+            this.snapshot = snapshot;
+        }
+
+        ByteBuffer read(long location) throws IOException {
+            long offset = RecordLocation.offsetOf(location);
+            int length = RecordLocation.lengthOf(location);
+            int found = snapshot.blockOf(offset);
+            if (found < 0 || offset + length > snapshot.rawStarts[found + 1]) {
+                throw new EOFException("Location points past the end of the file");
+            }
+            if (found != block) {
+                raw = inflate(channel, snapshot, found);
+                block = found;
+            }
+            return ByteBuffer.wrap(raw.array(), (int) (offset - snapshot.rawStarts[found]), length).slice();
+        }
+    }
+
+    // Walks the lines of the blocks in [from, to), decompressing one block at a time
+    static final class Cursor implements LineCursor {
+        private final FileChannel channel;
+        private final Snapshot snapshot;
+        private final int to;
+        private int nextBlock;
+        private ByteBuffer raw;
+        private long rawStart;
+        private int position;
+        private int start;
+        private int length;
+
+        Cursor(FileChannel channel, Snapshot snapshot) {
+            this(channel, snapshot, 0, snapshot.count());
+        }
+
+        Cursor(FileChannel channel, Snapshot snapshot, int from, int to) {
+            this.channel = channel;
+            this.snapshot = snapshot;
+            this.nextBlock = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                if (raw == null || position >= raw.limit()) {
+                    if (nextBlock >= to) {
+                        return false;
+                    }
+                    rawStart = snapshot.rawStarts[nextBlock];
+                    raw = inflate(channel, snapshot, nextBlock++);
+                    position = 0;
+                }
+                int lineStart = position;
+                int i = lineStart;
+                while (i < raw.limit() && raw.get(i) != '\n') {
+                    i++;
+                }
+                position = i + 1;
+                int lineLength = i - lineStart;
+                if (lineLength > 0 && raw.get(lineStart + lineLength - 1) == '\r') {
+                    lineLength--;
+                }
+                if (lineLength > 0) {
+                    start = lineStart;
+                    length = lineLength;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            return raw;
+        }
+
+        @Override
+        public int start() {
+            return start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public long offset() {
+            return rawStart + start;
+        }
+    }
+
+    // Sequential view of the uncompressed text; closes the channel when closed
+    static final class Input extends InputStream {
+        private final FileChannel channel;
+        private final Snapshot snapshot;
+        private int nextBlock;
+        private ByteBuffer raw;
+
+        Input(FileChannel channel, Snapshot snapshot) {
+            this.channel = channel;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? raw.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, raw.remaining());
+            raw.get(b, off, n);
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (raw == null || !raw.hasRemaining()) {
+                if (nextBlock >= snapshot.count()) {
+                    return false;
+                }
+                raw = inflate(channel, snapshot, nextBlock++);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Buffers written text and compresses it into blocks of about blockSize uncompressed bytes.
+    // With lineAligned a block is only cut after a newline, so a line longer than blockSize gets
+    // a block of its own. close() writes whatever is left as the last block.
+    static final class Output extends OutputStream {
+        private final OutputStream out;
+        private final int blockSize;
+        private final boolean lineAligned;
+        private final Deflater deflater = new Deflater();
+        private byte[] buffer;
+        private int buffered;
+        private byte[] packed;
+
+        Output(OutputStream out, int blockSize, boolean lineAligned) {
+            this.out = out;
+            this.blockSize = Math.max(1, blockSize);
+            this.lineAligned = lineAligned;
+            this.buffer = new byte[this.blockSize];
+            this.packed = new byte[this.blockSize / 2 + 64];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(1);
+            buffer[buffered++] = (byte) b;
+            cutIfFull();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, buffered, len);
+            buffered += len;
+            cutIfFull();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (buffered > 0) {
+                    writeBlock(buffered);
+                }
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (buffered + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, buffered + extra));
+            }
+        }
+
+        private void cutIfFull() throws IOException {
+            if (buffered < blockSize) {
+                return;
+            }
+            int cut = buffered;
+            if (lineAligned) {
+                while (cut > 0 && buffer[cut - 1] != '\n') {
+                    cut--;
+                }
+            }
+            if (cut > 0) {
+                writeBlock(cut);
+            }
+        }
+
+        // Compresses buffer[0, length) into a block and keeps the rest for the next one
+        private void writeBlock(int length) throws IOException {
+            deflater.reset();
+            deflater.setInput(buffer, 0, length);
+            deflater.finish();
+            int packedLength = 0;
+            while (!deflater.finished()) {
+                if (packedLength == packed.length) {
+                    packed = Arrays.copyOf(packed, packed.length * 2);
+                }
+                packedLength += deflater.deflate(packed, packedLength, packed.length - packedLength);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(length).putInt(packedLength);
+            out.write(header.array());
+            out.write(packed, 0, packedLength);
+            System.arraycopy(buffer, length, buffer, 0, buffered - length);
+            buffered -= length;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Helpers for parsing records straight out of a byte slice without decoding the whole line
+public final class ByteSlices {
+    private ByteSlices() {
+
+    }
+
+    // Position of the first occurrence of b in [from, to), or to when it does not occur
+    public static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // Parses a decimal int from [from, to), ignoring surrounding blanks
+    public static int parseInt(ByteBuffer buffer, int from, int to) {
+        while (from < to && isBlank(buffer.get(from))) {
+            from++;
+        }
+        while (to > from && isBlank(buffer.get(to - 1))) {
+            to--;
+        }
+        if (from == to) {
+            throw new NumberFormatException("Empty number");
+        }
+        boolean negative = buffer.get(from) == '-';
+        int i = negative || buffer.get(from) == '+' ? from + 1 : from;
+        if (i == to) {
+            throw new NumberFormatException("Sign without digits");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid digit in number");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Number out of int range");
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number out of int range");
+        }
+        return (int) value;
+    }
+
+    // Decodes [from, to) as UTF-8, ignoring surrounding blanks like String.trim()
+    public static String decodeTrimmed(ByteBuffer buffer, int from, int to) {
+        while (from < to && isBlank(buffer.get(from))) {
+            from++;
+        }
+        while (to > from && isBlank(buffer.get(to - 1))) {
+            to--;
+        }
+        return decode(buffer, from, to);
+    }
+
+    // Decodes [from, to) as UTF-8
+    public static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Same notion of blank as String.trim()
+    private static boolean isBlank(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+
+    // Whether the slice [from, to) starts with the ASCII prefix
+    static boolean startsWith(ByteBuffer buffer, int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(from + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,8 +1,18 @@
 package org.example.storage;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+// All backends are safe to share between threads: reads run concurrently, writes are applied
+// one at a time, and a stream reads a consistent snapshot taken when it was opened.
 public interface CRUD<T> {
+    // Number of rows a cursor asks the backend for at a time unless told otherwise
+    int DEFAULT_FETCH_SIZE = 500;
+
     void create(T obj);
 
     T read(Integer id);
@@ -12,4 +22,85 @@ public interface CRUD<T> {
     void update(Integer id, T obj);
 
     void delete(Integer id);
+
+    // Primitive id variants. Backends with an int keyed index override read(int) and let
+    // read(Integer) unbox into it; the defaults box and delegate.
+    default T read(int id) {
+        return read(Integer.valueOf(id));
+    }
+
+    default void update(int id, T obj) {
+        update(Integer.valueOf(id), obj);
+    }
+
+    default void delete(int id) {
+        delete(Integer.valueOf(id));
+    }
+
+    // Batch variants; backends override them to use one transaction or one rewrite per batch
+    default void createAll(Collection<T> objs) {
+        for (T obj : objs) {
+            create(obj);
+        }
+    }
+
+    default void updateAll(Map<Integer, T> objs) {
+        for (Map.Entry<Integer, T> entry : objs.entrySet()) {
+            update(entry.getKey(), entry.getValue());
+        }
+    }
+
+    default void deleteAll(Collection<Integer> ids) {
+        for (Integer id : ids) {
+            delete(id);
+        }
+    }
+
+    // Lazily walks every record. The stream holds a file or connection open until it is closed,
+    // so use it in a try-with-resources block.
+    default Stream<T> stream() {
+        return stream(DEFAULT_FETCH_SIZE);
+    }
+
+    // fetchSize is a hint for how many records the backend pulls in one round trip
+    default Stream<T> stream(int fetchSize) {
+        return readAll().stream();
+    }
+
+    // Hands every record to sink in batches of at most batchSize, in stream() order. A sink that
+    // blocks holds up the scan, so memory stays bounded however large the store is. The default
+    // cuts stream() into batches; line files parse several chunks of the file in parallel.
+    default void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        try (Stream<T> records = stream(batchSize)) {
+            List<T> batch = new ArrayList<>(batchSize);
+            for (Iterator<T> it = records.iterator(); it.hasNext(); ) {
+                batch.add(it.next());
+                if (batch.size() == batchSize) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+            }
+        }
+    }
+
+    // Records matching the query. The default filters stream(), which stops reading once the
+    // requested page is complete; backends with an index or a query language narrow it first.
+    default List<T> query(Query<T> query) {
+        try (Stream<T> records = stream()) {
+            return query.apply(records);
+        }
+    }
+
+    // Forces everything written so far to stable storage
+    default void force() {
+
+    }
+
+    interface BatchSink<T> {
+        // Takes ownership of the batch
+        void accept(List<T> batch) throws InterruptedException;
+    }
 }
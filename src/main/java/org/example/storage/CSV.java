@@ -1,102 +1,64 @@
 package org.example.storage;
 
-import java.io.*;
-import java.nio.file.*;
-import java.util.*;
-import java.util.stream.*;
+import java.nio.ByteBuffer;
 
-public class CSV<T> implements CRUD<T> {
-    private Path path;
+public class CSV<T> extends LineFile<T> {
     private CSVParser<T> parser;
     private CSVFormatter<T> formatter;
 
     // Constructor to set the file path and CSV utilities
     public CSV(String filename, CSVParser<T> parser, CSVFormatter<T> formatter) {
-        this.path = Paths.get(filename);
+        this(filename, parser, formatter, new StorageOptions());
+    }
+
+    public CSV(String filename, CSVParser<T> parser, CSVFormatter<T> formatter, StorageOptions options) {
+        super(filename, options);
         this.parser = parser;
         this.formatter = formatter;
     }
 
     @Override
-    public void create(T obj) {
-        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardOpenOption.APPEND)) {
-            writer.write(formatter.format(obj));
-            writer.newLine();
-        } catch (IOException e) {
-            // Exception handling here
-        }
+    protected T parseLine(String line) {
+        return parser.parse(line);
     }
 
     @Override
-    public T read(Integer id) {
-        try (Stream<String> lines = Files.lines(path)) {
-            return lines.map(parser::parse)
-                    .filter(Objects::nonNull)
-                    .filter(obj -> parser.getId(obj).equals(id))
-                    .findFirst()
-                    .orElse(null);
-        } catch (IOException e) {
-            // Exception handling here
-            return null;
-        }
+    protected T parseLine(ByteBuffer buffer, int offset, int length) {
+        return parser.parse(buffer, offset, length);
     }
 
     @Override
-    public List<T> readAll() {
-        try (Stream<String> lines = Files.lines(path)) {
-            return lines.map(parser::parse)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            // Exception handling here
-            return Collections.emptyList();
-        }
+    protected T parseLine(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+        return parser.parse(buffer, offset, length, tokens);
     }
 
     @Override
-    public void update(Integer id, T obj) {
-        List<T> objects = readAll();
-        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-            objects.stream()
-                    .map(existingObj -> parser.getId(existingObj).equals(id) ? obj : existingObj)
-                    .map(formatter::format)
-                    .forEach(line -> {
-                        try {
-                            writer.write(line);
-                            writer.newLine();
-                        } catch (IOException e) {
-                            // Exception handling here
-                        }
-                    });
-        } catch (IOException e) {
-            // Exception handling here
-        }
+    protected String formatLine(T obj) {
+        return formatter.format(obj);
     }
 
     @Override
-    public void delete(Integer id) {
-        List<T> objects = readAll();
-        objects.removeIf(obj -> parser.getId(obj).equals(id));
-        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-            objects.stream()
-                    .map(formatter::format)
-                    .forEach(line -> {
-                        try {
-                            writer.write(line);
-                            writer.newLine();
-                        } catch (IOException e) {
-                            // Exception handling here
-                        }
-                    });
-        } catch (IOException e) {
-            // Exception handling here
-        }
+    protected Integer idOf(T obj) {
+        return parser.getId(obj);
     }
 
     // Interfaces for CSV parsing and formatting
     public interface CSVParser<U> {
         U parse(String line);
 
+        // Parses a line held in buffer[offset, offset + length) without its line terminator.
+        // Override to read the fields straight from the bytes instead of decoding the line
+        // first, e.g. with a FieldTokenizer. readAll calls this from several threads at once.
+        default U parse(ByteBuffer buffer, int offset, int length) {
+            return parse(ByteSlices.decode(buffer, offset, offset + length));
+        }
+
+        // Same, with a comma separated tokenizer that the caller reuses for every line of a
+        // chunk. It is never shared between threads.
+        default U parse(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+            return parse(buffer, offset, length);
+        }
+
         Integer getId(U obj);
     }
 
@@ -104,4 +66,3 @@ public class CSV<T> implements CRUD<T> {
         String format(U obj);
     }
 }
-
@@ -0,0 +1,29 @@
+package org.example.storage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs log compactions for all file backends on one background daemon thread
+final class Compactor {
+    // Logs with fewer dead records than this are not worth compacting
+    static final long MIN_GARBAGE_RECORDS = 1024;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Compactor() {
+
+    }
+
+    static boolean isDue(long records, long liveRecords, double threshold) {
+        long garbage = records - liveRecords;
+        return garbage >= MIN_GARBAGE_RECORDS && garbage >= threshold * records;
+    }
+
+    static void schedule(Runnable compaction) {
+        EXECUTOR.execute(compaction);
+    }
+}
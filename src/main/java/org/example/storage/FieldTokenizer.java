@@ -0,0 +1,64 @@
+package org.example.storage;
+
+import java.nio.ByteBuffer;
+
+// Single pass cursor over the separated fields of a line held in a byte slice. next() moves to
+// the following field and the accessors read it in place, so a numeric column is parsed
+// without an intermediate String. Reset it onto each line; an instance is not thread safe.
+public final class FieldTokenizer {
+    private final byte separator;
+    private ByteBuffer buffer;
+    private int lineEnd;
+    private int position;
+    private int start;
+    private int end;
+
+    public FieldTokenizer(char separator) {
+        if (separator > 0x7F) {
+            throw new IllegalArgumentException("Separator must be ASCII");
+        }
+        this.separator = (byte) separator;
+    }
+
+    public FieldTokenizer reset(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.lineEnd = offset + length;
+        this.position = offset;
+        this.start = offset;
+        this.end = offset;
+        return this;
+    }
+
+    // Moves to the next field; false once the line is exhausted. Like String.split with a
+    // limit, "a," has two fields and an empty line has one empty field.
+    public boolean next() {
+        if (position > lineEnd) {
+            return false;
+        }
+        start = position;
+        end = ByteSlices.indexOf(buffer, position, lineEnd, separator);
+        position = end + 1;
+        return true;
+    }
+
+    // Bounds of the current field in the buffer
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public int intValue() {
+        return ByteSlices.parseInt(buffer, start, end);
+    }
+
+    public String stringValue() {
+        return ByteSlices.decode(buffer, start, end);
+    }
+
+    public String trimmedValue() {
+        return ByteSlices.decodeTrimmed(buffer, start, end);
+    }
+}
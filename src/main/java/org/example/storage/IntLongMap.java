@@ -0,0 +1,210 @@
+package org.example.storage;
+
+import java.util.Arrays;
+
+// Open addressing int -> long hash map with linear probing. Keys and values live in two
+// primitive arrays, so an entry costs 12 bytes instead of a HashMap node with two boxes.
+// One value is reserved to mark empty slots; get returns it for absent keys and it cannot be
+// stored.
+public final class IntLongMap {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final long missingValue;
+    private int[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public IntLongMap(long missingValue) {
+        this(missingValue, MIN_CAPACITY);
+    }
+
+    public IntLongMap(long missingValue, int expectedSize) {
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public long missingValue() {
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return values[slotOf(key)] != missingValue;
+    }
+
+    public long get(int key) {
+        return values[slotOf(key)];
+    }
+
+    // Returns the previous value, or the missing value when the key was absent
+    public long put(int key, long value) {
+        if (value == missingValue) {
+            throw new IllegalArgumentException("Cannot store the missing value " + value);
+        }
+        int slot = slotOf(key);
+        long previous = values[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        if (previous == missingValue && ++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return previous;
+    }
+
+    public long putIfAbsent(int key, long value) {
+        long current = get(key);
+        if (current == missingValue) {
+            put(key, value);
+        }
+        return current;
+    }
+
+    // Returns the removed value, or the missing value when the key was absent
+    public long remove(int key) {
+        int slot = slotOf(key);
+        long previous = values[slot];
+        if (previous == missingValue) {
+            return previous;
+        }
+        size--;
+        // Backward shift deletion: pull later entries of the probe run into the hole so
+        // lookups never need tombstones
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (values[next] != missingValue) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = missingValue;
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(values, missingValue);
+        size = 0;
+    }
+
+    public void putAll(IntLongMap other) {
+        other.forEach(this::put);
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != missingValue) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    // All keys, in the same order values() returns their values
+    public int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != missingValue) {
+                result[i++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    // All values, in no particular order
+    public long[] values() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long value : values) {
+            if (value != missingValue) {
+                result[i++] = value;
+            }
+        }
+        return result;
+    }
+
+    // Independent copy, e.g. to keep using a snapshot of an index after its lock is released
+    public IntLongMap copy() {
+        IntLongMap copy = new IntLongMap(missingValue, 0);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.mask = mask;
+        copy.size = size;
+        copy.resizeAt = resizeAt;
+        return copy;
+    }
+
+    // Values whose key lies in [fromKey, toKey], in no particular order
+    public long[] valuesBetween(int fromKey, int toKey) {
+        long[] result = new long[size];
+        int i = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != missingValue && keys[slot] >= fromKey && keys[slot] <= toKey) {
+                result[i++] = values[slot];
+            }
+        }
+        return Arrays.copyOf(result, i);
+    }
+
+    // Slot holding key, or the empty slot where it would go
+    private int slotOf(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != missingValue && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != missingValue) {
+                int target = slotOf(oldKeys[slot]);
+                keys[target] = oldKeys[slot];
+                values[target] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        if (missingValue != 0) {
+            Arrays.fill(values, missingValue);
+        }
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Spreads sequential ids across the table
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+}
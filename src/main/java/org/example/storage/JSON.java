@@ -1,31 +1,82 @@
 package org.example.storage;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import org.example.entity.DataModel;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
 
-import java.util.stream.Collectors;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.io.File;
-import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+// Records are streamed one at a time through Gson's JsonReader/JsonWriter, so neither lookups
+// nor rewrites hold the whole file on the heap. A file name ending in ".jsonl" selects the
+// JSON Lines layout (one object per line), where create is a plain append.
+// Reads share a read/write lock and writes take it exclusively. Rewrites are swapped in with an
+// atomic rename, so readers never see a half written array.
+// Records are bound through the entity codec's TypeAdapter rather than Gson reflection.
+// A compressed file holds the same text as deflated blocks (see BlockFile); JSON Lines blocks
+// end on a line, so appends add blocks and readAll decompresses and parses them in parallel.
 public class JSON<T> implements CRUD<T> {
     private Path path;
     private Gson gson;
     private Class<T> typeClass;
+    private boolean jsonLines;
+    private final EntityCodec<T> codec;
+    private final int blockSize;
+    // Block index of a compressed file, null for plain text
+    private final BlockFile blocks;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // A JSON line has no comma separated fields, so the chunk's tokenizer goes unused
+    private final ParallelLines.LineParser<T> lineParser = (buffer, start, length, tokens) -> parseLine(buffer, start, length);
 
     public JSON(String filename, Class<T> typeClass) {
+        this(filename, CodecRegistry.codecFor(typeClass));
+    }
+
+    public JSON(String filename, EntityCodec<T> codec) {
+        this(filename, codec, new StorageOptions());
+    }
+
+    // Only the compression settings of options apply to JSON
+    public JSON(String filename, EntityCodec<T> codec, StorageOptions options) {
         this.path = Paths.get(filename);
-        this.gson = new Gson();
-        this.typeClass = typeClass;
+        this.codec = codec;
+        this.typeClass = codec.getType();
+        this.gson = new GsonBuilder().registerTypeAdapter(typeClass, codec.typeAdapter()).create();
+        this.jsonLines = filename.endsWith(".jsonl");
+        this.blockSize = options.getBlockSize();
+        this.blocks = options.isCompressed() ? new BlockFile(path) : null;
         createFileIfNotExists();
     }
 
@@ -34,78 +85,345 @@ public class JSON<T> implements CRUD<T> {
             if (Files.notExists(path)) {
                 Files.createFile(path);
                 // Initialize with an empty JSON array
-                writeToFile(Collections.emptyList());
+                if (!jsonLines) {
+                    rewrite(Function.identity(), Collections.emptyList());
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-
+    // Full scans go through stream(), which opens the file under the lock and reads it without,
+    // so a long scan does not hold up writers. Appended lines lie past the size the stream pinned
+    // and rewrites rename a new file over the path; the open reader keeps the old one.
+    // JSON Lines files are pinned the same way and parsed in parallel, chunk by chunk or block
+    // by block when compressed.
     @Override
     public List<T> readAll() {
-        try (Reader reader = Files.newBufferedReader(path)) {
-            if (new File(path.toString()).length() == 0) {
-                return new ArrayList<>();
+        if (jsonLines) {
+            return readAllLines();
+        }
+        try (Stream<T> records = stream()) {
+            return records.collect(Collectors.toList());
+        }
+    }
+
+    private List<T> readAllLines() {
+        FileChannel channel = null;
+        try {
+            long size;
+            BlockFile.Snapshot snapshot = null;
+            lock.readLock().lock();
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                size = channel.size();
+                if (blocks != null) {
+                    snapshot = blocks.snapshot(channel);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            try (FileChannel pinned = channel) {
+                if (snapshot != null) {
+                    return BlockFile.parse(pinned, snapshot, lineParser);
+                }
+                return ParallelLines.parse(pinned, size, lineParser);
             }
-            Type listType = TypeToken.getParameterized(ArrayList.class, typeClass).getType();
-            List<T> result = gson.fromJson(reader, listType);
-            return result != null ? result : new ArrayList<>();
         } catch (IOException e) {
             e.printStackTrace();
+            closeQuietly(channel);
             return Collections.emptyList();
         }
     }
 
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // JSON Lines files are parsed a few chunks (or blocks) ahead in parallel; arrays are read
+    // through stream()
+    @Override
+    public void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        if (!jsonLines) {
+            CRUD.super.forEachBatch(batchSize, sink);
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            long size;
+            BlockFile.Snapshot snapshot = null;
+            lock.readLock().lock();
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                size = channel.size();
+                if (blocks != null) {
+                    snapshot = blocks.snapshot(channel);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            try (FileChannel pinned = channel) {
+                if (snapshot != null) {
+                    BlockFile.parse(pinned, snapshot, lineParser, batchSize, sink);
+                } else {
+                    ParallelLines.parse(pinned, size, lineParser, batchSize, sink);
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    // Blank lines are skipped; Gson is thread safe, so this runs on several threads at once
+    private T parseLine(ByteBuffer buffer, int start, int length) {
+        String line = ByteSlices.decode(buffer, start, start + length);
+        return line.trim().isEmpty() ? null : gson.fromJson(line, typeClass);
+    }
 
     @Override
     public void create(T obj) {
-        List<T> objects = readAll();
-        objects.add(obj);
-        writeToFile(objects);
+        createAll(Collections.singletonList(obj));
     }
 
     @Override
     public T read(Integer id) {
-        List<T> objects = readAll();
-        return objects.stream()
-                .filter(obj -> getIdFromObject(obj).equals(id))
-                .findFirst()
-                .orElse(null);
+        return id == null ? null : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
+        // Stops reading as soon as the record turns up
+        try (Stream<T> records = stream()) {
+            return records.filter(obj -> {
+                Integer objId = getIdFromObject(obj);
+                return objId != null && objId == id;
+            }).findFirst().orElse(null);
+        }
+    }
+
+    // Pulls one record at a time from the underlying JsonReader. JSON Lines files are walked
+    // through the mapping up to the size seen on open, so lines appended later stay invisible.
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        lock.readLock().lock();
+        try {
+            if (Files.size(path) == 0) {
+                return Stream.empty();
+            }
+            if (jsonLines) {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                LineCursor cursor = blocks != null
+                        ? new BlockFile.Cursor(channel, blocks.snapshot(channel))
+                        : new MappedLines.Cursor(channel, 0, channel.size());
+                return RecordStreams.of(() -> {
+                    while (cursor.next()) {
+                        T obj = parseLine(cursor.buffer(), cursor.start(), cursor.length());
+                        if (obj != null) {
+                            return obj;
+                        }
+                    }
+                    return null;
+                }, channel);
+            }
+            JsonReader reader = new JsonReader(openReader());
+            if (reader.peek() == JsonToken.NULL) {
+                reader.close();
+                return Stream.empty();
+            }
+            reader.beginArray();
+            return RecordStreams.of(() -> reader.hasNext() ? gson.fromJson(reader, typeClass) : null, reader);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Stream.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
     public void update(Integer id, T obj) {
-        List<T> objects = readAll();
-        List<T> updatedObjects = objects.stream()
-                .map(existingObj -> getIdFromObject(existingObj).equals(id) ? obj : existingObj)
-                .collect(Collectors.toList());
-        writeToFile(updatedObjects);
+        updateAll(Collections.singletonMap(id, obj));
     }
 
     @Override
     public void delete(Integer id) {
-        List<T> objects = readAll();
-        objects.removeIf(obj -> getIdFromObject(obj).equals(id));
-        writeToFile(objects);
+        deleteAll(Collections.singletonList(id));
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        lock.writeLock().lock();
+        try {
+            if (jsonLines) {
+                // A compressed file gets new blocks after the existing ones
+                try (Writer writer = openWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    writeLines(writer, objs);
+                }
+            } else {
+                rewrite(Function.identity(), objs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    private void writeToFile(List<T> objects) {
-        try (Writer writer = Files.newBufferedWriter(path)) {
-            gson.toJson(objects, writer);
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        lock.writeLock().lock();
+        try {
+            rewrite(existingObj -> objs.getOrDefault(getIdFromObject(existingObj), existingObj), Collections.emptyList());
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    // You need to implement this method based on how your object's ID is stored and retrieved
-    private Integer getIdFromObject(T obj) {
-        // Implement this method based on how T's ID is retrieved.
-        // For example, if T is always a DataModel, you can cast and call getId:
-        if (obj instanceof DataModel) {
-            return ((DataModel) obj).getId();
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        Set<Integer> unique = new HashSet<>(ids);
+        lock.writeLock().lock();
+        try {
+            rewrite(obj -> unique.contains(getIdFromObject(obj)) ? null : obj, Collections.emptyList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void force() {
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Hands every stored record to the visitor until it returns false
+    private void forEachRecord(RecordVisitor<T> visitor) throws IOException {
+        if (Files.size(path) == 0) {
+            return;
+        }
+        if (jsonLines) {
+            try (BufferedReader reader = openReader()) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty() && !visitor.visit(gson.fromJson(line, typeClass))) {
+                        return;
+                    }
+                }
+            }
+            return;
+        }
+        try (JsonReader reader = new JsonReader(openReader())) {
+            if (reader.peek() == JsonToken.NULL) {
+                return;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                T obj = gson.fromJson(reader, typeClass);
+                if (!visitor.visit(obj)) {
+                    return;
+                }
+            }
+            reader.endArray();
+        }
+    }
+
+    // Streams every record through transform (null drops it) into a temporary file, appends
+    // the extra records and atomically swaps the result in
+    private void rewrite(Function<T, T> transform, Collection<T> appended) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter out = openWriter(temp)) {
+            if (jsonLines) {
+                List<T> batch = new ArrayList<>(1);
+                forEachRecord(obj -> {
+                    T result = transform.apply(obj);
+                    if (result != null) {
+                        batch.add(result);
+                        writeLines(out, batch);
+                        batch.clear();
+                    }
+                    return true;
+                });
+                writeLines(out, appended);
+            } else {
+                JsonWriter writer = gson.newJsonWriter(out);
+                writer.beginArray();
+                forEachRecord(obj -> {
+                    T result = transform.apply(obj);
+                    if (result != null) {
+                        gson.toJson(result, typeClass, writer);
+                    }
+                    return true;
+                });
+                for (T obj : appended) {
+                    gson.toJson(obj, typeClass, writer);
+                }
+                writer.endArray();
+                writer.flush();
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (blocks != null) {
+            blocks.reset();
+        }
+    }
+
+    // Reads the current file as text, decompressing the blocks of a compressed file in order
+    private BufferedReader openReader() throws IOException {
+        if (blocks == null) {
+            return Files.newBufferedReader(path);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            BlockFile.Input in = new BlockFile.Input(channel, blocks.snapshot(channel));
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
         }
-        return null;
     }
-}
\ No newline at end of file
+
+    // An array is one long line, so its blocks are cut anywhere; JSON Lines blocks end on a line
+    private BufferedWriter openWriter(Path target, OpenOption... openOptions) throws IOException {
+        if (blocks == null) {
+            return Files.newBufferedWriter(target, openOptions);
+        }
+        OutputStream file = new BufferedOutputStream(Files.newOutputStream(target, openOptions));
+        OutputStream out = new BlockFile.Output(file, blockSize, jsonLines);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    private void writeLines(Writer writer, Collection<T> objs) throws IOException {
+        for (T obj : objs) {
+            gson.toJson(obj, typeClass, writer);
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    private Integer getIdFromObject(T obj) {
+        return codec.idOf(obj);
+    }
+
+    private interface RecordVisitor<U> {
+        // Returns false to stop the scan
+        boolean visit(U obj) throws IOException;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Pull style iteration over the non-empty lines of a file, each handed out as a slice of a
+// buffer. The slice accessors describe the current line until the next call to next().
+interface LineCursor {
+    boolean next() throws IOException;
+
+    ByteBuffer buffer();
+
+    int start();
+
+    int length();
+
+    // Offset of the current line from the start of the (uncompressed) text
+    long offset();
+}
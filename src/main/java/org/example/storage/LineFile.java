@@ -0,0 +1,616 @@
+package org.example.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Common storage logic for the line oriented text formats (one record per line).
+// In log structured mode update appends a new version of the record and delete appends a
+// tombstone line; the latest line of an id wins and a background compaction drops the rest.
+//
+// Any number of threads may read at once while writers are serialized by a read/write lock.
+// Rewrites go through a temporary file that is renamed over the original, and appends only add
+// bytes past the end, so an open stream never sees a torn line.
+//
+// Compressed files hold the same text as a run of deflated blocks (see BlockFile). Offsets in
+// the index are positions in the uncompressed text, so read(id) decompresses a single block.
+abstract class LineFile<T> implements CRUD<T> {
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final String TOMBSTONE_PREFIX = "#deleted,";
+
+    protected final Path path;
+    private final boolean indexed;
+    private final boolean logStructured;
+    private final double compactionThreshold;
+    private final int blockSize;
+    // Block index of a compressed file, null for plain text
+    private final BlockFile blocks;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private LineIndex index;
+    private boolean compactionScheduled;
+
+    protected LineFile(String filename, StorageOptions options) {
+        this.path = Paths.get(filename);
+        if (Files.notExists(path)) {
+            try {
+                Files.createFile(path);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        // The log is resolved through the index, so log structured files are always indexed
+        this.indexed = options.isIndexed() || options.isLogStructured();
+        this.logStructured = options.isLogStructured();
+        this.compactionThreshold = options.getCompactionThreshold();
+        this.blockSize = options.getBlockSize();
+        this.blocks = options.isCompressed() ? new BlockFile(path) : null;
+    }
+
+    protected abstract T parseLine(String line);
+
+    protected abstract String formatLine(T obj);
+
+    protected abstract Integer idOf(T obj);
+
+    protected abstract T parseLine(ByteBuffer buffer, int offset, int length);
+
+    // tokens is a comma separated tokenizer the caller reuses for the lines it parses in a row,
+    // so a subclass that reads fields in place need not allocate one per line
+    protected T parseLine(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+        return parseLine(buffer, offset, length);
+    }
+
+    static boolean isTombstone(ByteBuffer buffer, int offset, int length) {
+        return ByteSlices.startsWith(buffer, offset, offset + length, TOMBSTONE_PREFIX);
+    }
+
+    static int tombstoneId(ByteBuffer buffer, int offset, int length) {
+        return ByteSlices.parseInt(buffer, offset + TOMBSTONE_PREFIX.length(), offset + length);
+    }
+
+    // The index is opened on first use because it needs the subclass parser to be in place
+    private synchronized LineIndex index() {
+        if (indexed && index == null) {
+            index = new LineIndex(path, this::scanLines,
+                    (buffer, offset, length) -> idOf(parseLine(buffer, offset, length)), logStructured);
+        }
+        return index;
+    }
+
+    @Override
+    public void create(T obj) {
+        createAll(Collections.singletonList(obj));
+    }
+
+    @Override
+    public T read(Integer id) {
+        return id == null ? null : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
+        lock.readLock().lock();
+        try {
+            return readLocked(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private T readLocked(int id) {
+        LineIndex index = index();
+        if (index != null) {
+            try {
+                long location = index.lookup(id);
+                return location < 0 ? null : parseLine(readLine(index, location));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (logStructured) {
+            return readAllLocked().stream()
+                    .filter(obj -> hasId(obj, id))
+                    .findFirst()
+                    .orElse(null);
+        }
+        List<T> found = new ArrayList<>(1);
+        FieldTokenizer tokens = new FieldTokenizer(',');
+        try {
+            scanLines((buffer, start, length, offset) -> {
+                T obj = parseLine(buffer, start, length, tokens);
+                if (obj != null && hasId(obj, id)) {
+                    found.add(obj);
+                    return false;
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // A compressed line is read by decompressing only the block that holds it
+    private String readLine(LineIndex index, long location) throws IOException {
+        if (blocks == null) {
+            return index.readLine(location);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer line = new BlockFile.Reader(channel, blocks.snapshot(channel)).read(location);
+            return ByteSlices.decode(line, 0, line.limit());
+        }
+    }
+
+    // Hands every line to the visitor, decompressing the blocks of a compressed file in order
+    private void scanLines(MappedLines.LineVisitor visitor) throws IOException {
+        if (blocks == null) {
+            MappedLines.scan(path, visitor);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedLines.scan(new BlockFile.Cursor(channel, blocks.snapshot(channel)), visitor);
+        }
+    }
+
+    // Compares ids as ints so scans neither box the key nor dispatch to equals
+    private boolean hasId(T obj, int id) {
+        Integer objId = idOf(obj);
+        return objId != null && objId == id;
+    }
+
+    // Full scans walk the memory mapped file and parse every line straight from the mapping.
+    // Only pinning the file takes the lock: the channel, its size and for log structured files
+    // the live line locations are captured under it and the scan runs without it, so writers
+    // are not held up. Appends land past the pinned size and rewrites rename a new file over
+    // the path, which the open channel does not see; the old file goes away once it is closed.
+    // The blocks of a compressed file are decompressed and parsed in parallel.
+    @Override
+    public List<T> readAll() {
+        FileChannel channel = null;
+        try {
+            long[] live = null;
+            long size;
+            BlockFile.Snapshot snapshot = null;
+            lock.readLock().lock();
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                size = channel.size();
+                if (blocks != null) {
+                    snapshot = blocks.snapshot(channel);
+                }
+                if (logStructured) {
+                    live = index().liveLocations();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (live != null) {
+                try (Stream<T> records = streamLines(channel, snapshot, live)) {
+                    return records.collect(Collectors.toList());
+                }
+            }
+            try (FileChannel pinned = channel) {
+                if (snapshot != null) {
+                    return BlockFile.parse(pinned, snapshot, this::parseLine);
+                }
+                // Large files are parsed in chunks on several cores
+                return ParallelLines.parse(pinned, size, this::parseLine);
+            }
+        } catch (IOException e) {
+            closeQuietly(channel, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<T> readAllLocked() {
+        try {
+            if (logStructured) {
+                return resolveLatest();
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (blocks != null) {
+                    return BlockFile.parse(channel, blocks.snapshot(channel), this::parseLine);
+                }
+                return ParallelLines.parse(channel, channel.size(), this::parseLine);
+            }
+        } catch (IOException e) {
+            // Rewrites and compaction write back what this returns, so it must never come back
+            // short
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Plain files are walked line by line through the mapping. Log structured files take a
+    // snapshot of the live line locations and read exactly those lines in file order.
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        FileChannel channel = null;
+        try {
+            long[] live = null;
+            long size;
+            BlockFile.Snapshot snapshot = null;
+            lock.readLock().lock();
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                size = channel.size();
+                if (blocks != null) {
+                    snapshot = blocks.snapshot(channel);
+                }
+                if (logStructured) {
+                    live = index().liveLocations();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            FileChannel source = channel;
+            if (live == null) {
+                LineCursor cursor = snapshot != null
+                        ? new BlockFile.Cursor(source, snapshot)
+                        : new MappedLines.Cursor(source, 0, size);
+                FieldTokenizer tokens = new FieldTokenizer(',');
+                return RecordStreams.of(() -> {
+                    while (cursor.next()) {
+                        T obj = parseLine(cursor.buffer(), cursor.start(), cursor.length(), tokens);
+                        if (obj != null) {
+                            return obj;
+                        }
+                    }
+                    return null;
+                }, source);
+            }
+            return streamLines(source, snapshot, live);
+        } catch (IOException e) {
+            closeQuietly(channel, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Copies and exports go through here. Plain and compressed files are pinned like readAll and
+    // parsed a few chunks (or blocks) ahead in parallel; log structured files hand out their
+    // live lines in order through stream().
+    @Override
+    public void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        if (logStructured) {
+            CRUD.super.forEachBatch(batchSize, sink);
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            long size;
+            BlockFile.Snapshot snapshot = null;
+            lock.readLock().lock();
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                size = channel.size();
+                if (blocks != null) {
+                    snapshot = blocks.snapshot(channel);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            try (FileChannel pinned = channel) {
+                if (snapshot != null) {
+                    BlockFile.parse(pinned, snapshot, this::parseLine, batchSize, sink);
+                } else {
+                    ParallelLines.parse(pinned, size, this::parseLine, batchSize, sink);
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly(channel, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // An id range on an indexed file is resolved through the index, so only the lines of ids
+    // in the range are read; everything else filters a stream
+    @Override
+    public List<T> query(Query<T> query) {
+        if (!indexed || !query.hasIdRange()) {
+            return CRUD.super.query(query);
+        }
+        FileChannel channel = null;
+        try {
+            long[] locations;
+            BlockFile.Snapshot snapshot = null;
+            lock.readLock().lock();
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                if (blocks != null) {
+                    snapshot = blocks.snapshot(channel);
+                }
+                locations = index().locationsBetween(query.getFromId(), query.getToId());
+            } finally {
+                lock.readLock().unlock();
+            }
+            try (Stream<T> records = streamLines(channel, snapshot, locations)) {
+                return query.apply(records);
+            }
+        } catch (IOException e) {
+            closeQuietly(channel, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads the lines at the given locations in order and closes source with the stream.
+    // snapshot is the block index of a compressed file and null for plain text.
+    private Stream<T> streamLines(FileChannel source, BlockFile.Snapshot snapshot, long[] locations) {
+        BlockFile.Reader reader = snapshot != null ? new BlockFile.Reader(source, snapshot) : null;
+        int[] next = {0};
+        FieldTokenizer tokens = new FieldTokenizer(',');
+        return RecordStreams.of(() -> {
+            while (next[0] < locations.length) {
+                long location = locations[next[0]++];
+                ByteBuffer line = reader != null ? reader.read(location) : RecordLocation.read(source, location);
+                T obj = parseLine(line, 0, line.limit(), tokens);
+                if (obj != null) {
+                    return obj;
+                }
+            }
+            return null;
+        }, source);
+    }
+
+    @Override
+    public void update(Integer id, T obj) {
+        updateAll(Collections.singletonMap(id, obj));
+    }
+
+    @Override
+    public void delete(Integer id) {
+        deleteAll(Collections.singletonList(id));
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        List<Integer> ids = new ArrayList<>(objs.size());
+        List<String> lines = new ArrayList<>(objs.size());
+        for (T obj : objs) {
+            ids.add(idOf(obj));
+            lines.add(formatLine(obj));
+        }
+        lock.writeLock().lock();
+        try {
+            appendLines(ids, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        lock.writeLock().lock();
+        try {
+            updateAllLocked(objs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void updateAllLocked(Map<Integer, T> objs) {
+        if (logStructured) {
+            try {
+                List<Integer> ids = new ArrayList<>(objs.size());
+                List<String> lines = new ArrayList<>(objs.size());
+                for (Map.Entry<Integer, T> entry : objs.entrySet()) {
+                    if (index().lookup(entry.getKey()) >= 0) {
+                        Integer newId = idOf(entry.getValue());
+                        if (!entry.getKey().equals(newId)) {
+                            // The record moves to a new id, so the old one has to go
+                            ids.add(entry.getKey());
+                            lines.add(null);
+                        }
+                        ids.add(newId);
+                        lines.add(formatLine(entry.getValue()));
+                    }
+                }
+                appendLines(ids, lines);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        List<T> objects = readAllLocked();
+        objects.replaceAll(existingObj -> objs.getOrDefault(idOf(existingObj), existingObj));
+        writeAll(objects);
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        lock.writeLock().lock();
+        try {
+            deleteAllLocked(new LinkedHashSet<>(ids));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteAllLocked(Set<Integer> unique) {
+        if (logStructured) {
+            try {
+                List<Integer> deleted = new ArrayList<>(unique.size());
+                List<String> lines = new ArrayList<>(unique.size());
+                for (Integer id : unique) {
+                    if (index().lookup(id) >= 0) {
+                        deleted.add(id);
+                        lines.add(null);
+                    }
+                }
+                appendLines(deleted, lines);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        List<T> objects = readAllLocked();
+        objects.removeIf(obj -> unique.contains(idOf(obj)));
+        writeAll(objects);
+    }
+
+    // Appends a run of lines with a single open of the data file and a single index commit.
+    // A null text appends a tombstone for the id at the same position.
+    private void appendLines(List<Integer> ids, List<String> texts) throws IOException {
+        if (texts.isEmpty()) {
+            return;
+        }
+        LineIndex index = index();
+        if (index != null) {
+            index.refresh();
+        }
+        long offset = textSize();
+        int[] lengths = new int[texts.size()];
+        // A compressed file gets new blocks after the existing ones
+        try (OutputStream out = openOutput(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i) != null ? texts.get(i) : TOMBSTONE_PREFIX + ids.get(i);
+                byte[] line = text.getBytes(StandardCharsets.UTF_8);
+                lengths[i] = line.length;
+                out.write(line);
+                out.write(NEWLINE);
+            }
+        }
+        if (index != null) {
+            for (int i = 0; i < lengths.length; i++) {
+                if (texts.get(i) == null) {
+                    index.removed(ids.get(i));
+                } else {
+                    index.appended(ids.get(i), offset, lengths[i]);
+                }
+                offset += lengths[i] + NEWLINE.length;
+            }
+            index.commit();
+        }
+        if (logStructured) {
+            scheduleCompactionIfNeeded();
+        }
+    }
+
+    // Size of the (uncompressed) text, i.e. the offset of the next appended line
+    private long textSize() throws IOException {
+        if (blocks == null) {
+            return Files.size(path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return blocks.rawSize(channel);
+        }
+    }
+
+    private OutputStream openOutput(Path target, OpenOption... openOptions) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(target, openOptions));
+        return blocks != null ? new BlockFile.Output(out, blockSize, true) : out;
+    }
+
+    // Folds the log into the latest version of every record, in order of first appearance
+    private List<T> resolveLatest() throws IOException {
+        Map<Integer, T> latest = new LinkedHashMap<>();
+        FieldTokenizer tokens = new FieldTokenizer(',');
+        scanLines((buffer, start, length, offset) -> {
+            if (isTombstone(buffer, start, length)) {
+                latest.remove(tombstoneId(buffer, start, length));
+            } else {
+                T obj = parseLine(buffer, start, length, tokens);
+                if (obj != null) {
+                    latest.put(idOf(obj), obj);
+                }
+            }
+            return true;
+        });
+        return new ArrayList<>(latest.values());
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || !Compactor.isDue(index.lineCount(), index.liveCount(), compactionThreshold)) {
+            return;
+        }
+        compactionScheduled = true;
+        Compactor.schedule(this::compact);
+    }
+
+    @Override
+    public void force() {
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rewrites the log with only the live version of every record
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            compactionScheduled = false;
+            writeAll(readAllLocked());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Cleanup after a failure; a second failure here is kept on the first, which is the one
+    // the caller hears about
+    private static void closeQuietly(Closeable closeable, Exception failure) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file, Exception failure) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    // Rewrites the whole file through a temporary file that atomically replaces the original,
+    // recording the new line offsets for the index as it goes. A failed rewrite leaves the
+    // original in place and is rethrown.
+    private void writeAll(List<T> objects) {
+        LineIndex index = index();
+        IntLongMap locations = new IntLongMap(-1L, objects.size());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = openOutput(temp)) {
+                long offset = 0;
+                for (T obj : objects) {
+                    byte[] line = formatLine(obj).getBytes(StandardCharsets.UTF_8);
+                    out.write(line);
+                    out.write(NEWLINE);
+                    if (index != null) {
+                        locations.putIfAbsent(idOf(obj), RecordLocation.pack(offset, line.length));
+                    }
+                    offset += line.length + NEWLINE.length;
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (blocks != null) {
+                blocks.reset();
+            }
+        } catch (IOException e) {
+            deleteQuietly(temp, e);
+            throw new UncheckedIOException(e);
+        }
+        if (index != null) {
+            try {
+                index.replace(locations, objects.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.example.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+// Sidecar index mapping a record id to the location (byte offset and length) of its line in the data file.
+// The sidecar starts with the size, mtime and line count of the data file it describes, followed
+// by an append-only list of (id, location) entries where the last entry for an id wins.
+// Readers of the owning file share it, so its state is guarded by its own monitor.
+class LineIndex {
+    private static final int MAGIC = 0x4C494458; // "LIDX"
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 8;
+    private static final long REMOVED = -1L;
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private final LineSource lines;
+    private final IdExtractor idExtractor;
+    // Log structured files resolve to the latest line of an id, plain files to the first one
+    private final boolean lastWins;
+    private final IntLongMap locations = new IntLongMap(REMOVED);
+    private long dataSize;
+    private long dataModified;
+    private long lineCount;
+    // Entries appended since the last commit
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+
+    LineIndex(Path dataPath, LineSource lines, IdExtractor idExtractor, boolean lastWins) {
+        this.dataPath = dataPath;
+        this.indexPath = dataPath.resolveSibling(dataPath.getFileName() + ".idx");
+        this.lines = lines;
+        this.idExtractor = idExtractor;
+        this.lastWins = lastWins;
+        open();
+    }
+
+    // Rebuilds the index when the data file was changed behind its back
+    synchronized void refresh() throws IOException {
+        if (isStale()) {
+            rebuild();
+        }
+    }
+
+    // Returns the packed location of the line holding id, or -1 when the id is not present
+    synchronized long lookup(int id) throws IOException {
+        refresh();
+        return locations.get(id);
+    }
+
+    // Number of ids that currently resolve to a line
+    synchronized int liveCount() {
+        return locations.size();
+    }
+
+    // Number of lines in the data file, including superseded versions and tombstones
+    synchronized long lineCount() {
+        return lineCount;
+    }
+
+    // Reads the line at a packed location with a single positioned read
+    String readLine(long location) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            return new String(RecordLocation.read(channel, location).array(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Locations of every live line in file order
+    synchronized long[] liveLocations() throws IOException {
+        refresh();
+        long[] live = locations.values();
+        // The offset sits in the upper bits, so sorting the packed values sorts by offset
+        Arrays.sort(live);
+        return live;
+    }
+
+    // Live line locations of the ids in [fromId, toId], in file order
+    synchronized long[] locationsBetween(int fromId, int toId) throws IOException {
+        refresh();
+        long[] live = locations.valuesBetween(fromId, toId);
+        Arrays.sort(live);
+        return live;
+    }
+
+    // Records a record line appended to the data file; the sidecar is updated on commit()
+    synchronized void appended(int id, long offset, int length) throws IOException {
+        lineCount++;
+        if (lastWins || !locations.containsKey(id)) {
+            long location = RecordLocation.pack(offset, length);
+            locations.put(id, location);
+            pending.writeInt(id);
+            pending.writeLong(location);
+        }
+    }
+
+    // Records a tombstone line appended to the data file; the sidecar is updated on commit()
+    synchronized void removed(int id) throws IOException {
+        lineCount++;
+        if (locations.remove(id) != REMOVED) {
+            pending.writeInt(id);
+            pending.writeLong(REMOVED);
+        }
+    }
+
+    // Appends the entries recorded since the last commit and only then stamps the header with
+    // the data file's new size and mtime. If the append fails or the process dies half way, the
+    // old header no longer matches the data file and the next open rebuilds the index.
+    synchronized void commit() throws IOException {
+        if (pendingBytes.size() > 0) {
+            try (OutputStream out = Files.newOutputStream(indexPath, StandardOpenOption.APPEND)) {
+                pendingBytes.writeTo(out);
+            }
+            pendingBytes.reset();
+        }
+        writeHeader();
+    }
+
+    // Replaces the whole index after the data file has been rewritten
+    synchronized void replace(IntLongMap newLocations, long newLineCount) throws IOException {
+        pendingBytes.reset();
+        locations.clear();
+        locations.putAll(newLocations);
+        lineCount = newLineCount;
+        persist();
+    }
+
+    private void open() {
+        try {
+            if (!load()) {
+                rebuild();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean load() throws IOException {
+        if (Files.notExists(indexPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC) {
+                return false;
+            }
+            dataSize = in.readLong();
+            dataModified = in.readLong();
+            lineCount = in.readLong();
+            if (isStale()) {
+                return false;
+            }
+            locations.clear();
+            while (true) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                long location = in.readLong();
+                if (location == REMOVED) {
+                    locations.remove(id);
+                } else {
+                    locations.put(id, location);
+                }
+            }
+            return true;
+        } catch (EOFException e) {
+            // Truncated header, the index is rebuilt from the data file
+            return false;
+        }
+    }
+
+    private boolean isStale() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(dataPath, BasicFileAttributes.class);
+        return attributes.size() != dataSize || attributes.lastModifiedTime().toMillis() != dataModified;
+    }
+
+    // Scans the data file once and records where every line starts
+    private void rebuild() throws IOException {
+        pendingBytes.reset();
+        locations.clear();
+        lineCount = 0;
+        // A scan that fails half way must leave the index stale, not current and empty
+        dataSize = -1;
+        lines.scan((buffer, start, length, offset) -> {
+            indexLine(buffer, start, length, offset);
+            return true;
+        });
+        persist();
+    }
+
+    private void indexLine(ByteBuffer buffer, int start, int length, long offset) throws IOException {
+        lineCount++;
+        if (LineFile.isTombstone(buffer, start, length)) {
+            locations.remove(LineFile.tombstoneId(buffer, start, length));
+            return;
+        }
+        Integer id;
+        try {
+            id = idExtractor.idOf(buffer, start, length);
+        } catch (RuntimeException e) {
+            // Lines the parser cannot handle are not reachable through read(id) either
+            return;
+        }
+        if (id != null && (lastWins || !locations.containsKey(id))) {
+            locations.put(id, RecordLocation.pack(offset, length));
+        }
+    }
+
+    // Writes the whole index to a temporary file that atomically replaces the sidecar, so a
+    // crash leaves either the old index or the complete new one
+    private void persist() throws IOException {
+        captureDataAttributes();
+        Path temp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(dataSize);
+            out.writeLong(dataModified);
+            out.writeLong(lineCount);
+            int[] ids = locations.keys();
+            long[] live = locations.values();
+            for (int i = 0; i < ids.length; i++) {
+                out.writeInt(ids[i]);
+                out.writeLong(live[i]);
+            }
+        }
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Refreshes the data file size, mtime and line count stored at the start of the sidecar
+    private void writeHeader() throws IOException {
+        captureDataAttributes();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(dataSize).putLong(dataModified).putLong(lineCount).flip();
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    private void captureDataAttributes() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(dataPath, BasicFileAttributes.class);
+        dataSize = attributes.size();
+        dataModified = attributes.lastModifiedTime().toMillis();
+    }
+
+    interface LineSource {
+        // Hands every line of the data file to the visitor with its offset in the text
+        void scan(MappedLines.LineVisitor visitor) throws IOException;
+    }
+
+    interface IdExtractor {
+        // Id of the record held in buffer[offset, offset + length)
+        Integer idOf(ByteBuffer buffer, int offset, int length);
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Walks the lines of a file through memory mapped regions, handing every non-empty line out
+// as a slice of the mapped buffer so no per-line String or byte[] is created
+final class MappedLines {
+    // Files are mapped in regions of at most this many bytes, cut at a line boundary
+    private static final long REGION_SIZE = 256L * 1024 * 1024;
+
+    private MappedLines() {
+
+    }
+
+    interface LineVisitor {
+        // offset is relative to the start of the file; returns false to stop the scan
+        boolean visit(ByteBuffer buffer, int start, int length, long offset) throws IOException;
+    }
+
+    static void scan(Path path, LineVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            scan(new Cursor(channel, 0, channel.size()), visitor);
+        }
+    }
+
+    static void scan(LineCursor cursor, LineVisitor visitor) throws IOException {
+        while (cursor.next()) {
+            if (!visitor.visit(cursor.buffer(), cursor.start(), cursor.length(), cursor.offset())) {
+                return;
+            }
+        }
+    }
+
+    // Walks the lines in [from, to) of a channel; from must start a line
+    static final class Cursor implements LineCursor {
+        private final FileChannel channel;
+        private final long to;
+        private MappedByteBuffer region;
+        private long regionOffset;
+        private int regionEnd;
+        private int position;
+        private int start;
+        private int length;
+
+        Cursor(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.to = to;
+            this.regionOffset = from;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                if (region == null || position >= regionEnd) {
+                    if (!mapNextRegion()) {
+                        return false;
+                    }
+                }
+                int lineStart = position;
+                int i = lineStart;
+                while (i < regionEnd && region.get(i) != '\n') {
+                    i++;
+                }
+                position = i + 1;
+                int lineLength = i - lineStart;
+                if (lineLength > 0 && region.get(lineStart + lineLength - 1) == '\r') {
+                    lineLength--;
+                }
+                if (lineLength > 0) {
+                    start = lineStart;
+                    length = lineLength;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public MappedByteBuffer buffer() {
+            return region;
+        }
+
+        @Override
+        public int start() {
+            return start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public long offset() {
+            return regionOffset + start;
+        }
+
+        private boolean mapNextRegion() throws IOException {
+            long next = region == null ? regionOffset : regionOffset + regionEnd;
+            if (next >= to) {
+                return false;
+            }
+            long size = Math.min(REGION_SIZE, to - next);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, next, size);
+            regionOffset = next;
+            regionEnd = (int) size;
+            position = 0;
+            if (next + size < to) {
+                // Stop the region after its last complete line, the next region starts there
+                while (regionEnd > 0 && region.get(regionEnd - 1) != '\n') {
+                    regionEnd--;
+                }
+                if (regionEnd == 0) {
+                    throw new IOException("Line longer than " + REGION_SIZE + " bytes at offset " + next);
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Parses every line of a file on the common ForkJoin pool. The file is cut into chunks that
+// end at a line boundary, each chunk is walked by its own MappedLines.Cursor, and the chunk
+// results are concatenated in file order. Small files are parsed on the calling thread.
+final class ParallelLines {
+    // Chunks are never smaller than this, so a chunk is worth a task
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    // Chunks per worker, so a slow chunk does not leave the other workers idle
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private ParallelLines() {
+
+    }
+
+    interface LineParser<T> {
+        // Must be safe to call from several threads; returns null to skip the line. tokens
+        // belongs to the calling chunk and is reused for each of its lines.
+        T parse(ByteBuffer buffer, int start, int length, FieldTokenizer tokens);
+    }
+
+    // Parses the lines in [0, size) of channel, which stays open
+    static <T> List<T> parse(FileChannel channel, long size, LineParser<T> parser) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, size / ((long) pool.getParallelism() * CHUNKS_PER_WORKER));
+        long[] bounds = chunkBounds(channel, size, chunkSize);
+        int chunks = bounds.length - 1;
+        if (chunks <= 1) {
+            List<T> objects = new ArrayList<>();
+            parseChunk(channel, 0, size, parser, objects);
+            return objects;
+        }
+        List<List<T>> parts = new ArrayList<>(Collections.nCopies(chunks, null));
+        try {
+            pool.invoke(new ChunkTask<>(channel, bounds, 0, chunks, parser, parts));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int total = 0;
+        for (List<T> part : parts) {
+            total += part.size();
+        }
+        List<T> objects = new ArrayList<>(total);
+        for (List<T> part : parts) {
+            objects.addAll(part);
+        }
+        return objects;
+    }
+
+    // Parses the lines in [0, size) of channel, which stays open, and hands the records to sink in
+    // file order, batchSize at a time. Chunks are fixed at the minimum size and only a few per
+    // worker are parsed ahead of the one being handed out, so a blocking sink bounds memory.
+    static <T> void parse(FileChannel channel, long size, LineParser<T> parser, int batchSize,
+                          CRUD.BatchSink<T> sink) throws IOException, InterruptedException {
+        long[] bounds = chunkBounds(channel, size, MIN_CHUNK_SIZE);
+        inOrder(bounds.length - 1, chunk -> {
+            List<T> objects = new ArrayList<>();
+            parseChunk(channel, bounds[chunk], bounds[chunk + 1], parser, objects);
+            return objects;
+        }, batchSize, sink);
+    }
+
+    interface ChunkParser<T> {
+        // Must be safe to call from several threads
+        List<T> parse(int chunk) throws IOException;
+    }
+
+    // Parses chunks [0, chunks) on the common ForkJoin pool with a bounded number in flight and
+    // hands their records to sink in chunk order
+    static <T> void inOrder(int chunks, ChunkParser<T> parser, int batchSize,
+                            CRUD.BatchSink<T> sink) throws IOException, InterruptedException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = pool.getParallelism() * CHUNKS_PER_WORKER;
+        Deque<ForkJoinTask<List<T>>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < chunks || !inFlight.isEmpty()) {
+                while (next < chunks && inFlight.size() < window) {
+                    int chunk = next++;
+                    inFlight.add(pool.submit(() -> parser.parse(chunk)));
+                }
+                List<T> objects;
+                try {
+                    objects = inFlight.poll().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause);
+                }
+                for (int from = 0; from < objects.size(); from += batchSize) {
+                    int to = Math.min(objects.size(), from + batchSize);
+                    sink.accept(new ArrayList<>(objects.subList(from, to)));
+                }
+            }
+        } finally {
+            // Only left over when the sink or a chunk failed
+            for (ForkJoinTask<List<T>> task : inFlight) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    // Start of every chunk plus the file size. Each cut is moved forward past the next newline,
+    // and cuts that land inside the same line collapse into one.
+    private static long[] chunkBounds(FileChannel channel, long size, long chunkSize) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long cut = chunkSize;
+        while (cut < size) {
+            long lineStart = nextLineStart(channel, cut, size, probe);
+            if (lineStart >= size) {
+                break;
+            }
+            if (lineStart > bounds.get(bounds.size() - 1)) {
+                bounds.add(lineStart);
+            }
+            cut = Math.max(cut + chunkSize, lineStart);
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Offset just past the first newline at or after from, or size when there is none
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static <T> void parseChunk(FileChannel channel, long from, long to, LineParser<T> parser,
+                                       List<T> objects) throws IOException {
+        MappedLines.Cursor cursor = new MappedLines.Cursor(channel, from, to);
+        FieldTokenizer tokens = new FieldTokenizer(',');
+        while (cursor.next()) {
+            T obj = parser.parse(cursor.buffer(), cursor.start(), cursor.length(), tokens);
+            if (obj != null) {
+                objects.add(obj);
+            }
+        }
+    }
+
+    // Splits the chunk range in halves until a task owns a single chunk
+    private static final class ChunkTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+        private final LineParser<T> parser;
+        private final List<List<T>> parts;
+
+        ChunkTask(FileChannel channel, long[] bounds, int from, int to, LineParser<T> parser, List<List<T>> parts) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.parser = parser;
+            this.parts = parts;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask<>(channel, bounds, from, middle, parser, parts),
+                        new ChunkTask<>(channel, bounds, middle, to, parser, parts));
+                return;
+            }
+            List<T> objects = new ArrayList<>();
+            try {
+                parseChunk(channel, bounds[from], bounds[from + 1], parser, objects);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            parts.set(from, objects);
+        }
+    }
+}
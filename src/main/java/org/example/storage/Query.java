@@ -0,0 +1,169 @@
+package org.example.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Filter for CRUD.query(): an inclusive id range, equality and prefix matches on named fields,
+// and offset/limit paging over the matches in the backend's natural order. Field names are
+// resolved when a condition is added, so a typo fails here rather than matching nothing.
+public class Query<T> {
+    public enum Match {
+        EQUALS,
+        // The field's text form starts with the value
+        PREFIX
+    }
+
+    private final Function<T, Integer> idOf;
+    private final Function<String, Function<T, ?>> fields;
+    private final List<Condition<T>> conditions = new ArrayList<>();
+    private int fromId = Integer.MIN_VALUE;
+    private int toId = Integer.MAX_VALUE;
+    private long offset;
+    private long limit = Long.MAX_VALUE;
+
+    // fields maps a field name to its getter, or to null when there is no such field
+    public Query(Function<T, Integer> idOf, Function<String, Function<T, ?>> fields) {
+        this.idOf = idOf;
+        this.fields = fields;
+    }
+
+    public Query<T> idBetween(int fromId, int toId) {
+        this.fromId = fromId;
+        this.toId = toId;
+        return this;
+    }
+
+    public Query<T> whereEquals(String field, Object value) {
+        return where(field, Match.EQUALS, value);
+    }
+
+    public Query<T> wherePrefix(String field, String prefix) {
+        return where(field, Match.PREFIX, prefix);
+    }
+
+    public Query<T> where(String field, Match match, Object value) {
+        Function<T, ?> getter = fields.apply(field);
+        if (getter == null) {
+            throw new IllegalArgumentException("Unknown field " + field);
+        }
+        conditions.add(new Condition<>(field, match, value, getter));
+        return this;
+    }
+
+    public Query<T> offset(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    public Query<T> limit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    // Same filter with different paging, e.g. to ask each part of a split store for a page
+    public Query<T> withPage(long offset, long limit) {
+        Query<T> copy = new Query<>(idOf, fields);
+        copy.conditions.addAll(conditions);
+        copy.fromId = fromId;
+        copy.toId = toId;
+        return copy.offset(offset).limit(limit);
+    }
+
+    public int getFromId() {
+        return fromId;
+    }
+
+    public int getToId() {
+        return toId;
+    }
+
+    public boolean hasIdRange() {
+        return fromId != Integer.MIN_VALUE || toId != Integer.MAX_VALUE;
+    }
+
+    public List<Condition<T>> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public boolean hasLimit() {
+        return limit != Long.MAX_VALUE;
+    }
+
+    public boolean matchesId(int id) {
+        return id >= fromId && id <= toId;
+    }
+
+    public boolean matches(T obj) {
+        if (hasIdRange()) {
+            Integer id = idOf.apply(obj);
+            if (id == null || !matchesId(id)) {
+                return false;
+            }
+        }
+        for (Condition<T> condition : conditions) {
+            if (!condition.matches(obj)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Filters and pages records. The stream is consumed lazily, so a lazy source stops being
+    // read once offset + limit matches have been seen.
+    public List<T> apply(Stream<T> records) {
+        return records.filter(this::matches).skip(offset).limit(limit).collect(Collectors.toList());
+    }
+
+    public static final class Condition<T> {
+        private final String field;
+        private final Match match;
+        private final Object value;
+        private final Function<T, ?> getter;
+
+        Condition(String field, Match match, Object value, Function<T, ?> getter) {
+            this.field = field;
+            this.match = match;
+            this.value = value;
+            this.getter = getter;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Match getMatch() {
+            return match;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        boolean matches(T obj) {
+            Object actual = getter.apply(obj);
+            if (match == Match.EQUALS) {
+                return Objects.equals(actual, value);
+            }
+            return actual != null && value != null && String.valueOf(actual).startsWith(String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Packs where a record lives in a data file into one long: the byte offset takes the upper
+// 40 bits (1 TB) and the record length the lower 24 bits (16 MB)
+final class RecordLocation {
+    private static final int LENGTH_BITS = 24;
+    static final long MAX_LENGTH = (1L << LENGTH_BITS) - 1;
+
+    private RecordLocation() {
+
+    }
+
+    static long pack(long offset, int length) throws IOException {
+        if (length > MAX_LENGTH) {
+            throw new IOException("Record of " + length + " bytes is too long to be indexed");
+        }
+        return offset << LENGTH_BITS | length;
+    }
+
+    static long offsetOf(long location) {
+        return location >>> LENGTH_BITS;
+    }
+
+    static int lengthOf(long location) {
+        return (int) (location & MAX_LENGTH);
+    }
+
+    // Reads the bytes at a location with a single positioned read
+    static ByteBuffer read(FileChannel channel, long location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lengthOf(location));
+        long position = offsetOf(location);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Location points past the end of the file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
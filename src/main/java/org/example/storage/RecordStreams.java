@@ -0,0 +1,65 @@
+package org.example.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Turns a pull style record source into a lazy Stream that releases its resource on close().
+// A source or resource that fails throws UncheckedIOException from the stream operation, so a
+// failed read never looks like the end of the data.
+final class RecordStreams {
+    private RecordStreams() {
+
+    }
+
+    interface RecordSource<T> {
+        // Returns the next record, or null once the source is exhausted
+        T next() throws Exception;
+    }
+
+    static <T> Stream<T> of(RecordSource<T> source, AutoCloseable resource) {
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (done) {
+                    return false;
+                }
+                T next;
+                try {
+                    next = source.next();
+                } catch (Exception e) {
+                    done = true;
+                    throw unchecked(e);
+                }
+                if (next == null) {
+                    done = true;
+                    return false;
+                }
+                // Outside the try, so a failing consumer is its own error and not a read failure
+                action.accept(next);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                throw unchecked(e);
+            }
+        });
+    }
+
+    private static RuntimeException unchecked(Exception e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+    }
+}
@@ -2,52 +2,94 @@ package org.example.storage;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Keeps one long-lived writer connection plus a small pool of reader connections. Every
+// connection caches the statements it has prepared, so a call only binds and executes.
+// Writes are serialized on the writer connection while WAL mode lets the readers run next to it.
+public class SQLite<T> implements CRUD<T>, AutoCloseable {
+    public static final int DEFAULT_READER_CONNECTIONS = 4;
+    // How long a read waits for a pooled reader before opening a connection of its own
+    private static final long READER_WAIT_MILLIS = 100;
 
-public class SQLite<T> implements CRUD<T> {
     private String url;
     private SQLiteObjectMapper<T> objectMapper;
+    private final CachedConnection writer;
+    private final BlockingQueue<CachedConnection> idleReaders;
+    private final int maxReaders;
+    private int openReaders;
+    private volatile boolean closed;
 
     public SQLite(String dbName, SQLiteObjectMapper<T> objectMapper) {
+        this(dbName, objectMapper, DEFAULT_READER_CONNECTIONS);
+    }
+
+    public SQLite(String dbName, SQLiteObjectMapper<T> objectMapper, int readerConnections) {
         this.url = "jdbc:sqlite:" + dbName;
         this.objectMapper = objectMapper;
+        this.writer = new CachedConnection(url, true);
+        this.maxReaders = Math.max(1, readerConnections);
+        this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
         initializeDatabase();
     }
 
     private void initializeDatabase() {
         // Initialization logic to create tables, etc., using objectMapper.getTableCreationSQL()
-        try (Connection conn = DriverManager.getConnection(url);
-             Statement stmt = conn.createStatement()) {
-            // Execute table creation SQL command
-            stmt.execute(objectMapper.getTableCreationSQL());
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+        synchronized (writer) {
+            try (Statement stmt = writer.get().createStatement()) {
+                // Write-ahead logging lets the reader connections run while the writer commits
+                stmt.execute("PRAGMA journal_mode=WAL;");
+                // Execute table creation SQL command
+                stmt.execute(objectMapper.getTableCreationSQL());
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
         }
     }
 
     @Override
     public void create(T obj) {
-        try (Connection conn = DriverManager.getConnection(url);
-             PreparedStatement pstmt = conn.prepareStatement(objectMapper.getInsertSQL())) {
-            objectMapper.mapObjectToPreparedStatement(pstmt, obj);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+        synchronized (writer) {
+            checkOpen();
+            try {
+                PreparedStatement pstmt = writer.prepare(objectMapper.getInsertSQL());
+                objectMapper.mapObjectToPreparedStatement(pstmt, obj);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
         }
     }
 
     @Override
     public T read(Integer id) {
+        return id == null ? null : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
         T obj = null;
-        try (Connection conn = DriverManager.getConnection(url);
-             PreparedStatement pstmt = conn.prepareStatement(objectMapper.getSelectSQL())) {
+        CachedConnection reader = null;
+        try {
+            reader = acquireReader();
+            PreparedStatement pstmt = reader.prepare(objectMapper.getSelectSQL());
             pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                obj = objectMapper.mapResultSetToObject(rs);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    obj = objectMapper.mapResultSetToObject(rs);
+                }
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            releaseReader(reader);
         }
         return obj;
     }
@@ -55,42 +97,358 @@ public class SQLite<T> implements CRUD<T> {
     @Override
     public List<T> readAll() {
         List<T> list = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(url);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(objectMapper.getSelectAllSQL())) {
-            while (rs.next()) {
-                T obj = objectMapper.mapResultSetToObject(rs);
-                list.add(obj);
+        CachedConnection reader = null;
+        try {
+            reader = acquireReader();
+            PreparedStatement pstmt = reader.prepare(objectMapper.getSelectAllSQL());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    T obj = objectMapper.mapResultSetToObject(rs);
+                    list.add(obj);
+                }
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            releaseReader(reader);
         }
         return list;
     }
 
+    // Runs the query as a parameterized WHERE ... LIMIT on a reader connection, so only the
+    // requested page crosses JDBC. Falls back to filtering a stream when the mapper names no
+    // columns for the query's fields.
     @Override
-    public void update(Integer id, T obj) {
-        try (Connection conn = DriverManager.getConnection(url);
-             PreparedStatement pstmt = conn.prepareStatement(objectMapper.getUpdateSQL())) {
-            objectMapper.mapObjectToPreparedStatement(pstmt, obj);
-            pstmt.setInt(objectMapper.getUpdateIdParameterIndex(), id);
-            pstmt.executeUpdate();
+    public List<T> query(Query<T> query) {
+        String sql = querySQL(query);
+        if (sql == null) {
+            return CRUD.super.query(query);
+        }
+        List<T> list = new ArrayList<>();
+        CachedConnection reader = null;
+        try {
+            reader = acquireReader();
+            PreparedStatement pstmt = reader.prepare(sql);
+            int index = 1;
+            if (query.hasIdRange()) {
+                pstmt.setInt(index++, query.getFromId());
+                pstmt.setInt(index++, query.getToId());
+            }
+            for (Query.Condition<T> condition : query.getConditions()) {
+                if (condition.getMatch() == Query.Match.PREFIX) {
+                    pstmt.setString(index++, globPrefix(String.valueOf(condition.getValue())));
+                } else if (condition.getValue() != null) {
+                    pstmt.setObject(index++, condition.getValue());
+                }
+            }
+            // A negative LIMIT means no limit to SQLite
+            pstmt.setLong(index++, query.hasLimit() ? query.getLimit() : -1);
+            pstmt.setLong(index, query.getOffset());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    list.add(objectMapper.mapResultSetToObject(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            releaseReader(reader);
+        }
+        return list;
+    }
+
+    // Parameter order: id bounds, then one per condition except IS NULL, then LIMIT and OFFSET
+    private String querySQL(Query<T> query) {
+        List<String> clauses = new ArrayList<>();
+        if (query.hasIdRange()) {
+            String idColumn = objectMapper.getIdColumnName();
+            if (idColumn == null) {
+                return null;
+            }
+            clauses.add(idColumn + " BETWEEN ? AND ?");
+        }
+        for (Query.Condition<T> condition : query.getConditions()) {
+            String column = objectMapper.getColumnName(condition.getField());
+            if (column == null) {
+                return null;
+            }
+            if (condition.getMatch() == Query.Match.PREFIX) {
+                // GLOB is case sensitive like the in-memory match, and a literal prefix can use an index
+                clauses.add(column + " GLOB ?");
+            } else if (condition.getValue() == null) {
+                clauses.add(column + " IS NULL");
+            } else {
+                clauses.add(column + " = ?");
+            }
+        }
+        String select = objectMapper.getSelectWhereSQL(clauses.isEmpty() ? "1" : String.join(" AND ", clauses));
+        return select == null ? null : select + " LIMIT ? OFFSET ?;";
+    }
+
+    // Escapes the GLOB wildcards in prefix and matches anything after it
+    private static String globPrefix(String prefix) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 8);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                pattern.append('[').append(c).append(']');
+            } else {
+                pattern.append(c);
+            }
+        }
+        return pattern.append('*').toString();
+    }
+
+    // Keeps a reader connection and a live ResultSet until the stream is closed, so rows are
+    // pulled from SQLite fetchSize at a time instead of being buffered up front
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        CachedConnection reader = null;
+        try {
+            reader = acquireReader();
+            PreparedStatement pstmt = reader.prepare(objectMapper.getSelectAllSQL());
+            pstmt.setFetchSize(fetchSize);
+            ResultSet rs = pstmt.executeQuery();
+            CachedConnection owner = reader;
+            return RecordStreams.of(() -> rs.next() ? objectMapper.mapResultSetToObject(rs) : null, () -> {
+                try {
+                    rs.close();
+                } finally {
+                    releaseReader(owner);
+                }
+            });
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+            releaseReader(reader);
+            return Stream.empty();
+        }
+    }
+
+    @Override
+    public void update(Integer id, T obj) {
+        synchronized (writer) {
+            checkOpen();
+            try {
+                PreparedStatement pstmt = writer.prepare(objectMapper.getUpdateSQL());
+                objectMapper.mapObjectToPreparedStatement(pstmt, obj);
+                pstmt.setInt(objectMapper.getUpdateIdParameterIndex(), id);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
         }
     }
 
     @Override
     public void delete(Integer id) {
-        try (Connection conn = DriverManager.getConnection(url);
-             PreparedStatement pstmt = conn.prepareStatement(objectMapper.getDeleteSQL())) {
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
+        synchronized (writer) {
+            checkOpen();
+            try {
+                PreparedStatement pstmt = writer.prepare(objectMapper.getDeleteSQL());
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        executeBatch(objectMapper.getInsertSQL(), objs, (pstmt, obj) -> objectMapper.mapObjectToPreparedStatement(pstmt, obj));
+    }
+
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        executeBatch(objectMapper.getUpdateSQL(), objs.entrySet(), (pstmt, entry) -> {
+            objectMapper.mapObjectToPreparedStatement(pstmt, entry.getValue());
+            pstmt.setInt(objectMapper.getUpdateIdParameterIndex(), entry.getKey());
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        executeBatch(objectMapper.getDeleteSQL(), ids, (pstmt, id) -> pstmt.setInt(1, id));
+    }
+
+    // Runs one statement for every item as a JDBC batch inside a single transaction. Any failure
+    // rolls the whole batch back and is rethrown, so callers such as the write-behind queue and
+    // batch mode know nothing was written. The cached statement's batch is always cleared so
+    // nothing half bound is run again by the next batch.
+    private <E> void executeBatch(String sql, Collection<E> items, StatementBinder<E> binder) {
+        if (items.isEmpty()) {
+            return;
+        }
+        synchronized (writer) {
+            checkOpen();
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            try {
+                conn = writer.get();
+                conn.setAutoCommit(false);
+                pstmt = writer.prepare(sql);
+                for (E item : items) {
+                    binder.bind(pstmt, item);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                rollback(conn);
+                throw new IllegalStateException("Batch of " + items.size() + " rows rolled back: " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                rollback(conn);
+                throw e;
+            } finally {
+                clearBatch(pstmt);
+                restoreAutoCommit(conn);
+            }
+        }
+    }
+
+    private void clearBatch(PreparedStatement pstmt) {
+        if (pstmt == null) {
+            return;
+        }
+        try {
+            pstmt.clearBatch();
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
     }
 
+    private void rollback(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void restoreAutoCommit(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Closes the writer and every pooled reader together with their cached statements
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (writer) {
+            writer.close();
+        }
+        CachedConnection reader;
+        while ((reader = idleReaders.poll()) != null) {
+            reader.close();
+        }
+    }
+
+    // The writer connection is opened lazily, so without this a write after close() would
+    // quietly open a new one
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("SQLite backend " + url + " is closed");
+        }
+    }
+
+    private CachedConnection acquireReader() throws SQLException {
+        if (closed) {
+            throw new SQLException("SQLite backend " + url + " is closed");
+        }
+        CachedConnection reader = idleReaders.poll();
+        if (reader != null) {
+            return reader;
+        }
+        synchronized (idleReaders) {
+            if (openReaders < maxReaders) {
+                openReaders++;
+                return new CachedConnection(url, true);
+            }
+        }
+        try {
+            reader = idleReaders.poll(READER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", e);
+        }
+        // Every pooled reader can be held by an open stream, e.g. nested or unclosed ones, so
+        // rather than waiting for one forever the read gets a connection that is closed after it
+        return reader != null ? reader : new CachedConnection(url, false);
+    }
+
+    private void releaseReader(CachedConnection reader) {
+        if (reader == null) {
+            return;
+        }
+        if (closed || !reader.pooled) {
+            reader.close();
+        } else {
+            idleReaders.offer(reader);
+        }
+    }
+
+    // A lazily opened connection together with the statements prepared on it
+    private static class CachedConnection {
+        private final String url;
+        // Short lived readers opened while the pool was exhausted are not pooled
+        private final boolean pooled;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private Connection connection;
+
+        CachedConnection(String url, boolean pooled) {
+            this.url = url;
+            this.pooled = pooled;
+        }
+
+        Connection get() throws SQLException {
+            if (connection == null || connection.isClosed()) {
+                statements.clear();
+                connection = DriverManager.getConnection(url);
+            }
+            return connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            Connection conn = get();
+            PreparedStatement pstmt = statements.get(sql);
+            if (pstmt == null || pstmt.isClosed()) {
+                pstmt = conn.prepareStatement(sql);
+                statements.put(sql, pstmt);
+            }
+            pstmt.clearParameters();
+            return pstmt;
+        }
+
+        void close() {
+            try {
+                for (PreparedStatement pstmt : statements.values()) {
+                    pstmt.close();
+                }
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            } finally {
+                statements.clear();
+                connection = null;
+            }
+        }
+    }
+
+    private interface StatementBinder<E> {
+        void bind(PreparedStatement pstmt, E item) throws SQLException;
+    }
+
     // The SQLiteObjectMapper interface should be implemented for each specific type
     public interface SQLiteObjectMapper<U> {
         String getTableCreationSQL();
@@ -110,5 +468,19 @@ public class SQLite<T> implements CRUD<T> {
         void mapObjectToPreparedStatement(PreparedStatement pstmt, U obj) throws SQLException;
 
         U mapResultSetToObject(ResultSet rs) throws SQLException;
+
+        // Query pushdown. Mappers that leave these null have query() filter a full stream.
+        default String getIdColumnName() {
+            return null;
+        }
+
+        default String getColumnName(String field) {
+            return null;
+        }
+
+        // SELECT of the columns mapResultSetToObject reads, restricted by where, without a ';'
+        default String getSelectWhereSQL(String where) {
+            return null;
+        }
     }
 }
@@ -1,73 +1,451 @@
 package org.example.storage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
+// Stores every record as its own frame: [int id][int length][length bytes of Java serialization].
+// Frames are only ever appended: update appends a new version, delete appends a frame with a
+// length of -1 (tombstone), and an in-memory id -> location index points at the latest version.
+// Files written by the earlier single ObjectOutputStream layout are converted on open.
+// Reads share a read/write lock and writes take it exclusively; frames are never modified in
+// place and compaction swaps in a rewritten file, so open streams keep a consistent view.
 public class SerializedObject<T extends Serializable & SerializedObject.Identifiable> implements CRUD<T> {
+    private static final int MAGIC = 0x534F4246; // "SOBF"
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int TOMBSTONE = -1;
+    private static final short STREAM_MAGIC = (short) 0xACED;
+
     private String filePath;
+    private final Path path;
+    private final double compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntLongMap index = new IntLongMap(-1L);
+    private long frameCount;
+    private boolean compactionScheduled;
 
     public SerializedObject(String filePath) {
+        this(filePath, new StorageOptions());
+    }
+
+    public SerializedObject(String filePath, StorageOptions options) {
         this.filePath = filePath;
+        this.path = Paths.get(filePath);
+        this.compactionThreshold = options.getCompactionThreshold();
+        open();
     }
 
     @Override
     public void create(T obj) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(obj);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        createAll(Collections.singletonList(obj));
     }
 
     @Override
     public T read(Integer id) {
-        // Deserialization does not inherently support querying by ID.
-        // You would need a specific implementation based on your object's design.
-        return null;
+        return id == null ? null : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
+        lock.readLock().lock();
+        try {
+            long location = index.get(id);
+            if (location < 0) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return readRecord(channel, location);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    // Pins the current file, its size and a copy of the index under the lock and reads
+    // without it, so writers are not held up by a long scan. Frames appended later lie past
+    // the pinned size, and a compaction renames a new file over the one the channel still reads.
     @Override
     public List<T> readAll() {
+        FileChannel channel;
+        IntLongMap live;
+        long end;
+        lock.readLock().lock();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            end = channel.size();
+            live = index.copy();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (FileChannel pinned = channel) {
+            return readLive(pinned, end, live);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    private List<T> readAllLocked() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readLive(channel, channel.size(), index);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    // Reads the frames in [0, end) and deserializes those the live index points at
+    private List<T> readLive(FileChannel channel, long end, IntLongMap live) throws IOException {
         List<T> objects = new ArrayList<>();
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
-            while (true) {
-                objects.add((T) in.readObject());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        try {
+            in.readInt();
+            long offset = 4;
+            while (offset < end) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException eof) {
+                    break;
+                }
+                int length = in.readInt();
+                offset += FRAME_HEADER_SIZE;
+                if (length == TOMBSTONE) {
+                    continue;
+                }
+                // Only the frame the index points at is the live version of the record
+                long location = live.get(id);
+                if (location >= 0 && RecordLocation.offsetOf(location) == offset) {
+                    byte[] blob = new byte[length];
+                    in.readFully(blob);
+                    objects.add(deserialize(blob));
+                } else {
+                    in.skipNBytes(length);
+                }
+                offset += length;
             }
-        } catch (EOFException ignored) {
-            // End of file reached
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (ClassNotFoundException e) {
             e.printStackTrace();
         }
         return objects;
     }
 
+    // Snapshots the live record locations and reads exactly those frames in file order
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        return streamBetween(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // Id ranges are cut from the index, so records outside the range are never deserialized
+    @Override
+    public List<T> query(Query<T> query) {
+        try (Stream<T> records = streamBetween(query.getFromId(), query.getToId())) {
+            return query.apply(records);
+        }
+    }
+
+    private Stream<T> streamBetween(int fromId, int toId) {
+        FileChannel channel;
+        long[] live;
+        lock.readLock().lock();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            live = index.valuesBetween(fromId, toId);
+            Arrays.sort(live);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Stream.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] next = {0};
+        return RecordStreams.of(() -> next[0] < live.length ? readRecord(channel, live[next[0]++]) : null, channel);
+    }
+
     @Override
     public void update(Integer id, T obj) {
-        List<T> objects = readAll();
-        for (int i = 0; i < objects.size(); i++) {
-            if (objects.get(i).getId().equals(id)) {
-                objects.set(i, obj);
-                writeAll(objects);
-                return;
+        updateAll(Collections.singletonMap(id, obj));
+    }
+
+    @Override
+    public void delete(Integer id) {
+        deleteAll(Collections.singletonList(id));
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        List<Integer> ids = new ArrayList<>(objs.size());
+        List<T> frames = new ArrayList<>(objs.size());
+        for (T obj : objs) {
+            ids.add(obj.getId());
+            frames.add(obj);
+        }
+        lock.writeLock().lock();
+        try {
+            appendFrames(ids, frames);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        List<Integer> ids = new ArrayList<>(objs.size());
+        List<T> frames = new ArrayList<>(objs.size());
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, T> entry : objs.entrySet()) {
+                if (!index.containsKey(entry.getKey())) {
+                    continue;
+                }
+                if (!entry.getKey().equals(entry.getValue().getId())) {
+                    // The record moves to a new id, so the old one has to go
+                    ids.add(entry.getKey());
+                    frames.add(null);
+                }
+                ids.add(entry.getValue().getId());
+                frames.add(entry.getValue());
             }
+            appendFrames(ids, frames);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     @Override
-    public void delete(Integer id) {
-        List<T> objects = readAll();
-        objects.removeIf(obj -> obj.getId().equals(id));
-        writeAll(objects);
+    public void deleteAll(Collection<Integer> ids) {
+        Set<Integer> unique = new LinkedHashSet<>(ids);
+        lock.writeLock().lock();
+        try {
+            unique.removeIf(id -> !index.containsKey(id));
+            appendFrames(new ArrayList<>(unique), Collections.nCopies(unique.size(), null));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends one frame per id with a single open of the file; a null record is a tombstone
+    private void appendFrames(List<Integer> ids, List<T> frames) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            long start = Files.size(path);
+            long offset = start;
+            // Location of every frame written, -1 for tombstones; applied once the write succeeded
+            long[] locations = new long[ids.size()];
+            // The whole batch is framed in memory first, so a record that fails to serialize
+            // leaves nothing behind in the file and the frames on disk stay aligned
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(batch);
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                T obj = frames.get(i);
+                if (obj == null) {
+                    out.writeInt(id);
+                    out.writeInt(TOMBSTONE);
+                    offset += FRAME_HEADER_SIZE;
+                    locations[i] = -1L;
+                    continue;
+                }
+                byte[] blob = serialize(obj);
+                out.writeInt(id);
+                out.writeInt(blob.length);
+                out.write(blob);
+                locations[i] = RecordLocation.pack(offset + FRAME_HEADER_SIZE, blob.length);
+                offset += FRAME_HEADER_SIZE + blob.length;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                try {
+                    ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes, start + bytes.position());
+                    }
+                } catch (IOException e) {
+                    // Cut a partly written batch off again so the next frame walk stays aligned
+                    channel.truncate(start);
+                    throw e;
+                }
+            }
+            frameCount += ids.size();
+            for (int i = 0; i < locations.length; i++) {
+                if (locations[i] < 0) {
+                    index.remove(ids.get(i));
+                } else {
+                    index.put(ids.get(i), locations[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    @Override
+    public void force() {
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || !Compactor.isDue(frameCount, index.size(), compactionThreshold)) {
+            return;
+        }
+        compactionScheduled = true;
+        Compactor.schedule(this::compact);
+    }
+
+    // Rewrites the file with only the live version of every record
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            compactionScheduled = false;
+            writeAll(readAllLocked());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private T readRecord(FileChannel channel, long location) throws IOException, ClassNotFoundException {
+        return deserialize(RecordLocation.read(channel, location).array());
+    }
+
+    // Loads the index by walking the frame headers, converting legacy files first
+    private void open() {
+        try {
+            if (Files.notExists(path) || Files.size(path) == 0) {
+                writeAll(Collections.emptyList());
+                return;
+            }
+            if (!loadIndex()) {
+                // The legacy file is only read once the frame walk has closed it
+                writeAll(readLegacy());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
+    // Returns false, without indexing anything, when the file is in the legacy format. A frame
+    // cut short by a crash during an append is cut off the end of the file, so the next append
+    // starts on a frame boundary again.
+    private boolean loadIndex() throws IOException {
+        long size = Files.size(path);
+        // End of the last complete frame
+        long offset = 4;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                if ((short) (magic >>> 16) == STREAM_MAGIC) {
+                    return false;
+                }
+                throw new IOException(filePath + " is not a serialized object store");
+            }
+            while (offset + FRAME_HEADER_SIZE <= size) {
+                int id = in.readInt();
+                int length = in.readInt();
+                if (length == TOMBSTONE) {
+                    index.remove(id);
+                    frameCount++;
+                    offset += FRAME_HEADER_SIZE;
+                    continue;
+                }
+                if (length < 0 || offset + FRAME_HEADER_SIZE + length > size) {
+                    break;
+                }
+                in.skipNBytes(length);
+                index.put(id, RecordLocation.pack(offset + FRAME_HEADER_SIZE, length));
+                frameCount++;
+                offset += FRAME_HEADER_SIZE + length;
+            }
+        }
+        if (offset < size) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+        return true;
+    }
+
+    // Reads a file written as one ObjectOutputStream holding every record
+    @SuppressWarnings("unchecked")
+    private List<T> readLegacy() {
+        List<T> objects = new ArrayList<>();
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
+            while (true) {
+                objects.add((T) in.readObject());
+            }
+        } catch (EOFException ignored) {
+            // End of file reached
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return objects;
+    }
+
+    // Writes a fresh file holding one frame per record and swaps it in atomically
     private void writeAll(List<T> objects) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            for (T obj : objects) {
-                out.writeObject(obj);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        IntLongMap locations = new IntLongMap(-1L, objects.size());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                long offset = 4;
+                for (T obj : objects) {
+                    byte[] blob = serialize(obj);
+                    out.writeInt(obj.getId());
+                    out.writeInt(blob.length);
+                    out.write(blob);
+                    locations.put(obj.getId(), RecordLocation.pack(offset + FRAME_HEADER_SIZE, blob.length));
+                    offset += FRAME_HEADER_SIZE + blob.length;
+                }
             }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+        index.clear();
+        index.putAll(locations);
+        frameCount = objects.size();
+    }
+
+    private byte[] serialize(T obj) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(obj);
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T deserialize(byte[] blob) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(blob))) {
+            return (T) in.readObject();
         }
     }
 
@@ -0,0 +1,341 @@
+package org.example.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Spreads records over several stores of any format by id, so a rewrite only touches the shard
+// that owns the id and readAll reads the shards in parallel. The partitioner decides where an
+// id lives and must stay the same for the life of the files; use reshard() to change it.
+// Given a metadata file, the store records the partitioner there when it is first created and
+// refuses to open files that were written with a different one.
+//
+// Each shard is thread safe on its own. An update that moves a record to another shard is a
+// delete followed by a create and is not atomic.
+public class ShardedStore<T> implements CRUD<T>, AutoCloseable {
+    private static final int RESHARD_BATCH = 1000;
+
+    public interface Partitioner {
+        int shardCount();
+
+        int shardOf(int id);
+
+        // Names the partitioner and its settings, e.g. "hash-v1:4"; two partitioners with the
+        // same description must place every id in the same shard
+        String describe();
+
+        // Whether the shard can hold ids in [fromId, toId]; lets id range queries skip shards
+        default boolean mayContain(int shard, int fromId, int toId) {
+            return true;
+        }
+    }
+
+    private final List<CRUD<T>> shards;
+    private final Partitioner partitioner;
+    private final Function<T, Integer> idOf;
+
+    // shardFactory opens shard i, e.g. i -> new CSV<>("data." + i + ".csv", parser, formatter)
+    public ShardedStore(Partitioner partitioner, IntFunction<CRUD<T>> shardFactory, Function<T, Integer> idOf) {
+        this(partitioner, shardFactory, idOf, null);
+    }
+
+    // Same, checking the partitioner against the one recorded in metadataPath before any shard
+    // is opened. A missing metadata file is created; a null path skips the check.
+    public ShardedStore(Partitioner partitioner, IntFunction<CRUD<T>> shardFactory, Function<T, Integer> idOf,
+                        String metadataPath) {
+        if (metadataPath != null) {
+            checkPartitioner(Paths.get(metadataPath), partitioner);
+        }
+        this.partitioner = partitioner;
+        this.idOf = idOf;
+        List<CRUD<T>> opened = new ArrayList<>(partitioner.shardCount());
+        for (int i = 0; i < partitioner.shardCount(); i++) {
+            opened.add(shardFactory.apply(i));
+        }
+        this.shards = Collections.unmodifiableList(opened);
+    }
+
+    // Spreads ids evenly over shardCount shards with hash(), so files written by one run are
+    // read back correctly by the next
+    public static Partitioner byHash(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        return new Partitioner() {
+            @Override
+            public int shardCount() {
+                return shardCount;
+            }
+
+            @Override
+            public int shardOf(int id) {
+                return Math.floorMod(hash(id), shardCount);
+            }
+
+            @Override
+            public String describe() {
+                return "hash-v1:" + shardCount;
+            }
+        };
+    }
+
+    // The hash behind byHash: multiply by the 32 bit golden ratio constant 0x9E3779B9, then
+    // xor the high half into the low half. Shard files on disk depend on it, so it is frozen;
+    // a different hash needs a new partitioner name than "hash-v1" and a reshard().
+    public static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Shard 0 holds ids below bounds[0], shard i ids in [bounds[i - 1], bounds[i]) and the last
+    // shard everything from the last bound up, so n bounds make n + 1 shards
+    public static Partitioner byRange(int... bounds) {
+        int[] sorted = bounds.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] <= sorted[i - 1]) {
+                throw new IllegalArgumentException("Range bounds must be strictly increasing");
+            }
+        }
+        return new Partitioner() {
+            @Override
+            public int shardCount() {
+                return sorted.length + 1;
+            }
+
+            @Override
+            public int shardOf(int id) {
+                int shard = 0;
+                while (shard < sorted.length && id >= sorted[shard]) {
+                    shard++;
+                }
+                return shard;
+            }
+
+            @Override
+            public boolean mayContain(int shard, int fromId, int toId) {
+                boolean aboveLower = shard == 0 || toId >= sorted[shard - 1];
+                boolean belowUpper = shard == sorted.length || fromId < sorted[shard];
+                return aboveLower && belowUpper;
+            }
+
+            @Override
+            public String describe() {
+                return "range:" + Arrays.stream(sorted).mapToObj(Integer::toString).collect(Collectors.joining(","));
+            }
+        };
+    }
+
+    public List<CRUD<T>> getShards() {
+        return shards;
+    }
+
+    @Override
+    public void create(T obj) {
+        shards.get(shardOf(idOf.apply(obj))).create(obj);
+    }
+
+    @Override
+    public T read(Integer id) {
+        return id == null ? null : read(id.intValue());
+    }
+
+    @Override
+    public T read(int id) {
+        return shards.get(partitioner.shardOf(id)).read(id);
+    }
+
+    // Shards are read in parallel on the common ForkJoin pool and concatenated in shard order
+    @Override
+    public List<T> readAll() {
+        List<List<T>> parts = IntStream.range(0, shards.size()).parallel()
+                .mapToObj(shard -> shards.get(shard).readAll())
+                .collect(Collectors.toList());
+        int total = 0;
+        for (List<T> part : parts) {
+            total += part.size();
+        }
+        List<T> objects = new ArrayList<>(total);
+        for (List<T> part : parts) {
+            objects.addAll(part);
+        }
+        return objects;
+    }
+
+    // Walks the shards one after another; each shard stream is opened when the previous one
+    // is exhausted and closed right after
+    @Override
+    public Stream<T> stream(int fetchSize) {
+        return shards.stream().flatMap(shard -> shard.stream(fetchSize));
+    }
+
+    // Shards are scanned one after another, each with its own parallel parse if it has one
+    @Override
+    public void forEachBatch(int batchSize, BatchSink<T> sink) throws InterruptedException {
+        for (CRUD<T> shard : shards) {
+            shard.forEachBatch(batchSize, sink);
+        }
+    }
+
+    // Without a limit the shards are queried in parallel. A page is filled from the shards in
+    // order, asking each one only for the records still missing.
+    @Override
+    public List<T> query(Query<T> query) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (partitioner.mayContain(shard, query.getFromId(), query.getToId())) {
+                candidates.add(shard);
+            }
+        }
+        if (!query.hasLimit()) {
+            Query<T> unpaged = query.withPage(0, Long.MAX_VALUE);
+            List<T> objects = candidates.parallelStream()
+                    .flatMap(shard -> shards.get(shard).query(unpaged).stream())
+                    .collect(Collectors.toList());
+            return objects.subList((int) Math.min(query.getOffset(), objects.size()), objects.size());
+        }
+        long wanted = query.getOffset() + query.getLimit() < 0 ? Long.MAX_VALUE : query.getOffset() + query.getLimit();
+        List<T> objects = new ArrayList<>();
+        for (int shard : candidates) {
+            if (objects.size() >= wanted) {
+                break;
+            }
+            objects.addAll(shards.get(shard).query(query.withPage(0, wanted - objects.size())));
+        }
+        return objects.subList((int) Math.min(query.getOffset(), objects.size()), objects.size());
+    }
+
+    @Override
+    public void update(Integer id, T obj) {
+        updateAll(Collections.singletonMap(id, obj));
+    }
+
+    @Override
+    public void delete(Integer id) {
+        if (id != null) {
+            shards.get(partitioner.shardOf(id)).delete(id);
+        }
+    }
+
+    @Override
+    public void createAll(Collection<T> objs) {
+        Map<Integer, List<T>> byShard = new HashMap<>();
+        for (T obj : objs) {
+            byShard.computeIfAbsent(shardOf(idOf.apply(obj)), shard -> new ArrayList<>()).add(obj);
+        }
+        byShard.entrySet().parallelStream().forEach(entry -> shards.get(entry.getKey()).createAll(entry.getValue()));
+    }
+
+    // Records whose new id belongs to another shard are deleted from the old one and created in
+    // the new one, but only if the old shard holds them, like update on a single store
+    @Override
+    public void updateAll(Map<Integer, T> objs) {
+        Map<Integer, Map<Integer, T>> byShard = new HashMap<>();
+        Map<Integer, T> moved = new LinkedHashMap<>();
+        for (Map.Entry<Integer, T> entry : objs.entrySet()) {
+            int shard = shardOf(entry.getKey());
+            if (shardOf(idOf.apply(entry.getValue())) == shard) {
+                byShard.computeIfAbsent(shard, s -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+            } else {
+                moved.put(entry.getKey(), entry.getValue());
+            }
+        }
+        byShard.entrySet().parallelStream().forEach(entry -> shards.get(entry.getKey()).updateAll(entry.getValue()));
+        for (Map.Entry<Integer, T> entry : moved.entrySet()) {
+            CRUD<T> from = shards.get(partitioner.shardOf(entry.getKey()));
+            if (from.read(entry.getKey()) != null) {
+                from.delete(entry.getKey());
+                create(entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> ids) {
+        Map<Integer, List<Integer>> byShard = new HashMap<>();
+        for (Integer id : ids) {
+            if (id != null) {
+                byShard.computeIfAbsent(partitioner.shardOf(id), shard -> new ArrayList<>()).add(id);
+            }
+        }
+        byShard.entrySet().parallelStream().forEach(entry -> shards.get(entry.getKey()).deleteAll(entry.getValue()));
+    }
+
+    @Override
+    public void force() {
+        shards.parallelStream().forEach(CRUD::force);
+    }
+
+    @Override
+    public void close() {
+        for (CRUD<T> shard : shards) {
+            if (shard instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) shard).close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Offline resharding: copies every record of source into target, which is normally a
+    // fresh store over new files with a different partitioner. Run it while nothing else
+    // writes to source, then switch over to the new files.
+    public static <T> void reshard(ShardedStore<T> source, ShardedStore<T> target) {
+        for (CRUD<T> shard : source.shards) {
+            try (Stream<T> records = shard.stream(RESHARD_BATCH)) {
+                List<T> batch = new ArrayList<>(RESHARD_BATCH);
+                for (Iterator<T> it = records.iterator(); it.hasNext(); ) {
+                    batch.add(it.next());
+                    if (batch.size() == RESHARD_BATCH) {
+                        target.createAll(batch);
+                        batch.clear();
+                    }
+                }
+                target.createAll(batch);
+            }
+        }
+    }
+
+    // Records the partitioner in a fresh metadata file, or compares it with the recorded one
+    private static void checkPartitioner(Path metadata, Partitioner partitioner) {
+        String expected = partitioner.describe();
+        try {
+            if (Files.exists(metadata)) {
+                String recorded = new String(Files.readAllBytes(metadata), StandardCharsets.UTF_8).trim();
+                if (!recorded.equals(expected)) {
+                    throw new IllegalStateException("Shards of " + metadata + " were written with partitioner "
+                            + recorded + ", not " + expected + "; use reshard() to move them");
+                }
+                return;
+            }
+            Path temp = metadata.resolveSibling(metadata.getFileName() + ".tmp");
+            Files.write(temp, (expected + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, metadata, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Records without an id all land in the first shard
+    private int shardOf(Integer id) {
+        return id == null ? 0 : partitioner.shardOf(id);
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.storage;
+
+// Tuning knobs shared by the file based backends
+public class StorageOptions {
+    // Keep a sidecar id -> offset index next to the data file
+    private boolean indexed;
+    // Append new versions and tombstones instead of rewriting the file on update/delete
+    private boolean logStructured;
+    // Share of dead lines in a log structured file that triggers a background compaction
+    private double compactionThreshold = 0.5;
+    // Page size of newly created BinaryStore files
+    private int pageSize = 4096;
+    // Store text files as independently deflated blocks (CSV, TXT and JSON)
+    private boolean compressed;
+    // Uncompressed bytes per block of a compressed file
+    private int blockSize = BlockFile.DEFAULT_BLOCK_SIZE;
+
+    public StorageOptions() {
+
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    public boolean isLogStructured() {
+        return logStructured;
+    }
+
+    public void setLogStructured(boolean logStructured) {
+        this.logStructured = logStructured;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    public void setCompactionThreshold(double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+}
@@ -1,100 +1,44 @@
 package org.example.storage;
 
-import java.io.*;
-import java.nio.file.*;
-import java.util.*;
-import java.util.stream.*;
+import java.nio.ByteBuffer;
 
-public class TXT<T> implements CRUD<T> {
-    private  Path path;
+public class TXT<T> extends LineFile<T> {
     private  TextSerializer<T> serializer;
     private  TextDeserializer<T> deserializer;
 
     public TXT(String filename, TextSerializer<T> serializer, TextDeserializer<T> deserializer) {
-        this.path = Paths.get(filename);
-        if (Files.notExists(path)) {
-            try {
-                Files.createFile(path);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        this(filename, serializer, deserializer, new StorageOptions());
+    }
 
+    public TXT(String filename, TextSerializer<T> serializer, TextDeserializer<T> deserializer, StorageOptions options) {
+        super(filename, options);
         this.serializer = serializer;
         this.deserializer = deserializer;
     }
 
     @Override
-    public void create(T obj) {
-        try {
-            if (Files.notExists(path)) {
-                Files.createFile(path);
-            }
-            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardOpenOption.APPEND)) {
-                writer.write(serializer.serialize(obj));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    protected T parseLine(String line) {
+        return deserializer.deserialize(line);
     }
 
-
     @Override
-    public T read(Integer id) {
-        try (Stream<String> lines = Files.lines(path)) {
-            return lines.map(deserializer::deserialize)
-                    .filter(Objects::nonNull)
-                    .filter(obj -> deserializer.getId(obj).equals(id))
-                    .findFirst()
-                    .orElse(null);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+    protected T parseLine(ByteBuffer buffer, int offset, int length) {
+        return deserializer.deserialize(buffer, offset, length);
     }
 
     @Override
-    public List<T> readAll() {
-        try (Stream<String> lines = Files.lines(path)) {
-            return lines.map(deserializer::deserialize)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            e.printStackTrace();
-            return Collections.emptyList();
-        }
+    protected T parseLine(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+        return deserializer.deserialize(buffer, offset, length, tokens);
     }
 
     @Override
-    public void update(Integer id, T obj) {
-        List<T> objects = readAll();
-        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-            for (T currentObj : objects) {
-                if (deserializer.getId(currentObj).equals(id)) {
-                    writer.write(serializer.serialize(obj));
-                } else {
-                    writer.write(serializer.serialize(currentObj));
-                }
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    protected String formatLine(T obj) {
+        return serializer.serialize(obj);
     }
 
     @Override
-    public void delete(Integer id) {
-        List<T> objects = readAll();
-        objects.removeIf(obj -> deserializer.getId(obj).equals(id));
-        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-            for (T obj : objects) {
-                writer.write(serializer.serialize(obj));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    protected Integer idOf(T obj) {
+        return deserializer.getId(obj);
     }
 
     // Interfaces for object serialization and deserialization
@@ -104,6 +48,20 @@ public class TXT<T> implements CRUD<T> {
 
     public interface TextDeserializer<U> {
         U deserialize(String str);
+
+        // Deserializes a line held in buffer[offset, offset + length) without its line terminator.
+        // Override to read the fields straight from the bytes instead of decoding the line
+        // first, e.g. with a FieldTokenizer. readAll calls this from several threads at once.
+        default U deserialize(ByteBuffer buffer, int offset, int length) {
+            return deserialize(ByteSlices.decode(buffer, offset, offset + length));
+        }
+
+        // Same, with a comma separated tokenizer that the caller reuses for every line of a
+        // chunk. It is never shared between threads.
+        default U deserialize(ByteBuffer buffer, int offset, int length, FieldTokenizer tokens) {
+            return deserialize(buffer, offset, length);
+        }
+
         Integer getId(U obj);
     }
-}
\ No newline at end of file
+}
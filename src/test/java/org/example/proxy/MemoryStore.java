@@ -0,0 +1,80 @@
+package org.example.proxy;
+
+import org.example.entity.DataModel;
+import org.example.storage.CRUD;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-memory backend for the proxy tests. Writes fail while failing is set, and afterRead runs
+// between looking a record up and returning it, so a test can interleave other calls there.
+class MemoryStore implements CRUD<DataModel> {
+    private final Map<Integer, DataModel> records = new LinkedHashMap<>();
+    volatile boolean failing;
+    volatile Runnable afterRead = () -> { };
+
+    @Override
+    public void create(DataModel obj) {
+        createAll(List.of(obj));
+    }
+
+    @Override
+    public DataModel read(Integer id) {
+        DataModel obj;
+        synchronized (this) {
+            obj = records.get(id);
+        }
+        afterRead.run();
+        return obj;
+    }
+
+    @Override
+    public synchronized List<DataModel> readAll() {
+        return new ArrayList<>(records.values());
+    }
+
+    @Override
+    public void update(Integer id, DataModel obj) {
+        updateAll(Map.of(id, obj));
+    }
+
+    @Override
+    public void delete(Integer id) {
+        deleteAll(List.of(id));
+    }
+
+    @Override
+    public synchronized void createAll(Collection<DataModel> objs) {
+        write();
+        for (DataModel obj : objs) {
+            records.put(obj.getId(), obj);
+        }
+    }
+
+    @Override
+    public synchronized void updateAll(Map<Integer, DataModel> objs) {
+        write();
+        for (Map.Entry<Integer, DataModel> entry : objs.entrySet()) {
+            if (records.remove(entry.getKey()) != null) {
+                records.put(entry.getValue().getId(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void deleteAll(Collection<Integer> ids) {
+        write();
+        for (Integer id : ids) {
+            records.remove(id);
+        }
+    }
+
+    private void write() {
+        if (failing) {
+            throw new IllegalStateException("Backend is down");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.proxy;
+
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyTest {
+    private final MemoryStore backend = new MemoryStore();
+    private final ProxyCache<DataModel> cache = new ProxyCache<>(DataModel::getId, 100);
+    private final Proxy<DataModel> proxy = new Proxy<>(backend, cache);
+
+    @Test
+    void readsAreCachedAndWritesInvalidate() {
+        proxy.create(new DataModel(1, "one"));
+        assertEquals("one", proxy.read(1).getName());
+        assertEquals("one", proxy.read(1).getName());
+        assertEquals(1, cache.getHitCount());
+
+        proxy.update(1, new DataModel(1, "ONE"));
+        assertEquals("ONE", proxy.read(1).getName());
+        proxy.delete(1);
+        assertNull(proxy.read(1));
+    }
+
+    @Test
+    void cacheStaysWithinItsBound() {
+        for (ProxyCache.EvictionPolicy policy : ProxyCache.EvictionPolicy.values()) {
+            ProxyCache<DataModel> bounded = new ProxyCache<>(DataModel::getId, 10, obj -> 1, policy);
+            for (int id = 0; id < 50; id++) {
+                bounded.put(new DataModel(id, "name" + id));
+            }
+            assertTrue(bounded.size() <= 10, policy.toString());
+            assertEquals(50 - bounded.size(), bounded.getEvictionCount());
+        }
+    }
+
+    // An update landing between the backend read of a miss and caching its result must win
+    @Test
+    void valueReadBeforeAConcurrentUpdateIsNotCached() throws InterruptedException {
+        proxy.create(new DataModel(1, "old"));
+        CountDownLatch readDone = new CountDownLatch(1);
+        CountDownLatch updated = new CountDownLatch(1);
+        backend.afterRead = () -> {
+            readDone.countDown();
+            try {
+                updated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        AtomicReference<DataModel> seen = new AtomicReference<>();
+        Thread reader = new Thread(() -> seen.set(proxy.read(1)));
+        reader.start();
+        readDone.await();
+        backend.afterRead = () -> { };
+        proxy.update(1, new DataModel(1, "new"));
+        updated.countDown();
+        reader.join();
+
+        assertEquals("old", seen.get().getName());
+        assertEquals("new", proxy.read(1).getName());
+    }
+
+    @Test
+    void stampRejectsPutsAfterAnInvalidation() {
+        long stamp = cache.stamp(5);
+        cache.invalidate(5);
+        assertFalse(cache.put(new DataModel(5, "stale"), stamp));
+        assertTrue(cache.put(new DataModel(5, "fresh"), cache.stamp(5)));
+        assertEquals("fresh", cache.get(5).getName());
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.proxy;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.example.storage.CSV;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    private final MemoryStore backend = new MemoryStore();
+
+    @Test
+    void writesToTheSameIdAreCoalesced() {
+        WriteBehindQueue<DataModel> queue = open(WriteBehindQueue.Durability.FLUSH);
+        queue.create(new DataModel(1, "one"));
+        queue.update(1, new DataModel(1, "ONE"));
+        queue.create(new DataModel(2, "two"));
+        queue.delete(2);
+        assertEquals("ONE", queue.read(1).getName());
+        assertNull(queue.read(2));
+        assertTrue(backend.readAll().isEmpty());
+
+        queue.flush();
+        assertEquals(List.of("1:ONE"), keys(backend.readAll()));
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    void failedBatchStaysQueuedUnderNewerWrites() {
+        WriteBehindQueue<DataModel> queue = open(WriteBehindQueue.Durability.FLUSH);
+        backend.failing = true;
+        queue.create(new DataModel(1, "one"));
+        queue.create(new DataModel(2, "two"));
+        assertThrows(IllegalStateException.class, queue::flush);
+        assertEquals(2, queue.pendingCount());
+
+        queue.update(1, new DataModel(1, "ONE"));
+        assertEquals("ONE", queue.read(1).getName());
+        backend.failing = false;
+        queue.flush();
+        assertEquals(List.of("1:ONE", "2:two"), keys(backend.readAll()));
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    void closeReportsAFailedBatchAndKeepsIt() {
+        WriteBehindQueue<DataModel> queue = open(WriteBehindQueue.Durability.FSYNC);
+        queue.create(new DataModel(1, "one"));
+        backend.failing = true;
+        assertThrows(IllegalStateException.class, queue::close);
+        assertEquals(1, queue.pendingCount());
+
+        backend.failing = false;
+        queue.flush();
+        assertEquals(List.of("1:one"), keys(backend.readAll()));
+    }
+
+    // Without durability flush() only schedules the write, so a failure shows up on the next call
+    @Test
+    void backgroundFailureIsReportedByTheNextFlush() throws InterruptedException {
+        WriteBehindQueue<DataModel> queue = open(WriteBehindQueue.Durability.NONE);
+        backend.failing = true;
+        queue.create(new DataModel(1, "one"));
+        queue.flush();
+        while (!flushFailed(queue)) {
+            Thread.sleep(10);
+        }
+        assertTrue(backend.readAll().isEmpty());
+        backend.failing = false;
+        queue.close();
+        assertEquals(List.of("1:one"), keys(backend.readAll()));
+    }
+
+    // File backends throw when a write fails, so the batch is kept instead of being dropped
+    @Test
+    void failedFileWriteStaysQueued() throws IOException {
+        Path file = dir.resolve("data.csv");
+        CSV<DataModel> csv = new CSV<>(file.toString(), CODEC.csvParser(), CODEC.csvFormatter());
+        WriteBehindQueue<DataModel> queue = new WriteBehindQueue<>(csv, DataModel::getId,
+                WriteBehindQueue.DEFAULT_MAX_PENDING, 0, WriteBehindQueue.Durability.FLUSH);
+        // Appending to a directory fails
+        Files.delete(file);
+        Files.createDirectory(file);
+        queue.create(new DataModel(1, "one"));
+        IllegalStateException failure = assertThrows(IllegalStateException.class, queue::flush);
+        assertInstanceOf(UncheckedIOException.class, failure.getCause());
+        assertEquals(1, queue.pendingCount());
+
+        Files.delete(file);
+        Files.createFile(file);
+        queue.flush();
+        assertEquals(List.of("1:one"), keys(csv.readAll()));
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    void flushAfterCloseWritesOnTheCallingThread() {
+        WriteBehindQueue<DataModel> queue = open(WriteBehindQueue.Durability.NONE);
+        queue.close();
+        queue.create(new DataModel(1, "one"));
+        queue.flush();
+        assertEquals(List.of("1:one"), keys(backend.readAll()));
+    }
+
+    private WriteBehindQueue<DataModel> open(WriteBehindQueue.Durability durability) {
+        return new WriteBehindQueue<>(backend, DataModel::getId, WriteBehindQueue.DEFAULT_MAX_PENDING, 0, durability);
+    }
+
+    // The stored failure is handed to the first flush() after it, which then throws
+    private static boolean flushFailed(WriteBehindQueue<DataModel> queue) {
+        try {
+            queue.flush();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    // Sorted, since a retried create reaches the backend as a delete followed by a create
+    private static List<String> keys(List<DataModel> records) {
+        return records.stream().map(record -> record.getId() + ":" + record.getName()).sorted().collect(Collectors.toList());
+    }
+}
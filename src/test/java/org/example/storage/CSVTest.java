@@ -0,0 +1,136 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CSVTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void plainFileRoundTrips() {
+        StoreChecks.roundTrip(() -> open(new StorageOptions()));
+    }
+
+    @Test
+    void indexedFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setIndexed(true);
+        StoreChecks.roundTrip(() -> open(options));
+        assertTrue(Files.exists(dir.resolve("data.csv.idx")));
+    }
+
+    @Test
+    void logStructuredFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setLogStructured(true);
+        StoreChecks.roundTrip(() -> open(options));
+    }
+
+    @Test
+    void compressedFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setCompressed(true);
+        options.setBlockSize(64);
+        StoreChecks.roundTrip(() -> open(options));
+    }
+
+    @Test
+    void compressedLogStructuredFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setCompressed(true);
+        options.setLogStructured(true);
+        options.setBlockSize(64);
+        StoreChecks.roundTrip(() -> open(options));
+    }
+
+    @Test
+    void compactionKeepsTheLatestVersions() throws IOException {
+        StorageOptions options = new StorageOptions();
+        options.setLogStructured(true);
+        CSV<DataModel> store = open(options);
+        store.createAll(StoreChecks.records(0, 10));
+        for (int round = 0; round < 3; round++) {
+            store.update(4, new DataModel(4, "round" + round));
+        }
+        store.delete(7);
+        long before = Files.size(dir.resolve("data.csv"));
+        store.compact();
+
+        assertTrue(Files.size(dir.resolve("data.csv")) < before);
+        List<String> expected = new ArrayList<>(StoreChecks.sorted(StoreChecks.records(0, 10)));
+        expected.remove("7:name7");
+        expected.set(expected.indexOf("4:name4"), "4:round2");
+        StoreChecks.assertContents(expected, store);
+        StoreChecks.assertContents(expected, open(options));
+    }
+
+    @Test
+    void forEachBatchKeepsFileOrder() throws InterruptedException {
+        CSV<DataModel> store = open(new StorageOptions());
+        store.createAll(StoreChecks.records(0, 2500));
+        List<DataModel> seen = new ArrayList<>();
+        store.forEachBatch(1000, batch -> {
+            assertTrue(batch.size() <= 1000);
+            seen.addAll(batch);
+        });
+        assertEquals(StoreChecks.keys(StoreChecks.records(0, 2500)), StoreChecks.keys(seen));
+    }
+
+    @Test
+    void idRangeQueryUsesTheIndex() {
+        StorageOptions options = new StorageOptions();
+        options.setIndexed(true);
+        CSV<DataModel> store = open(options);
+        store.createAll(StoreChecks.records(0, 100));
+        Query<DataModel> query = CODEC.query().idBetween(10, 19).limit(5);
+        assertEquals(StoreChecks.keys(StoreChecks.records(10, 15)), StoreChecks.keys(store.query(query)));
+    }
+
+    // Reads used to print the error and come back empty, which a rewrite or compaction then
+    // wrote back over the data. Swapping the file for a directory makes every read fail.
+    @Test
+    void failedReadsAreThrown() throws IOException {
+        StorageOptions options = new StorageOptions();
+        options.setLogStructured(true);
+        for (StorageOptions each : new StorageOptions[]{new StorageOptions(), options}) {
+            CSV<DataModel> store = open(each);
+            store.createAll(StoreChecks.records(0, 10));
+            Path file = dir.resolve("data.csv");
+            Path moved = dir.resolve("moved.csv");
+            Files.move(file, moved);
+            Files.createDirectory(file);
+
+            assertThrows(UncheckedIOException.class, store::readAll);
+            assertThrows(UncheckedIOException.class, () -> store.stream(10).count());
+            assertThrows(UncheckedIOException.class, () -> store.query(CODEC.query().idBetween(2, 4)));
+            assertThrows(UncheckedIOException.class, store::compact);
+
+            Files.delete(file);
+            Files.move(moved, file);
+            StoreChecks.assertContents(StoreChecks.sorted(StoreChecks.records(0, 10)), store);
+            Files.delete(file);
+            Files.deleteIfExists(dir.resolve("data.csv.idx"));
+        }
+    }
+
+    private CSV<DataModel> open(StorageOptions options) {
+        return new CSV<>(dir.resolve("data.csv").toString(), CODEC.csvParser(), CODEC.csvFormatter(), options);
+    }
+}
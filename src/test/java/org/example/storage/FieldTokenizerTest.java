@@ -0,0 +1,62 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FieldTokenizerTest {
+    // Fields split the way String.split(",", -1) splits them
+    @Test
+    void splitsLikeStringSplit() {
+        for (String line : new String[]{"12,abc", "a,", ",a", "", "x,,y", "a,b,c,d"}) {
+            assertEquals(List.of(line.split(",", -1)), fields(line), line);
+        }
+    }
+
+    @Test
+    void readsFieldsInPlace() {
+        ByteBuffer buffer = ByteBuffer.wrap("skip|-42, caf\u00e9 |tail".getBytes(StandardCharsets.UTF_8));
+        FieldTokenizer tokenizer = new FieldTokenizer(',').reset(buffer, 5, buffer.limit() - 10);
+        tokenizer.next();
+        assertEquals(-42, tokenizer.intValue());
+        tokenizer.next();
+        assertEquals(" caf\u00e9 ", tokenizer.stringValue());
+        assertEquals("caf\u00e9", tokenizer.trimmedValue());
+    }
+
+    // Chunk parsers reuse one tokenizer for all their lines; nothing of a line may leak into
+    // the next, not even when the next is short a field
+    @Test
+    void oneTokenizerParsesManyLines() {
+        EntityCodec<DataModel> codec = CodecRegistry.codecFor(DataModel.class);
+        ByteBuffer buffer = ByteBuffer.wrap("1,one\n22,two\n3".getBytes(StandardCharsets.UTF_8));
+        FieldTokenizer tokens = new FieldTokenizer(',');
+        assertEquals("1:one", StoreChecks.key(codec.parse(buffer, 0, 5, tokens)));
+        assertEquals("22:two", StoreChecks.key(codec.parse(buffer, 6, 6, tokens)));
+        assertThrows(IllegalArgumentException.class, () -> codec.parse(buffer, 13, 1, tokens));
+    }
+
+    @Test
+    void separatorMustBeAscii() {
+        assertThrows(IllegalArgumentException.class, () -> new FieldTokenizer('\u00a7'));
+    }
+
+    private static List<String> fields(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        FieldTokenizer tokenizer = new FieldTokenizer(',').reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+        List<String> fields = new ArrayList<>();
+        while (tokenizer.next()) {
+            fields.add(tokenizer.stringValue());
+        }
+        return fields;
+    }
+}
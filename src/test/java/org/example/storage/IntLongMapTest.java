@@ -0,0 +1,82 @@
+package org.example.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntLongMapTest {
+    private static final long MISSING = -1L;
+
+    @Test
+    void putGetAndRemove() {
+        IntLongMap map = new IntLongMap(MISSING);
+        assertEquals(MISSING, map.put(7, 70));
+        assertEquals(70, map.put(7, 71));
+        assertEquals(71, map.putIfAbsent(7, 72));
+        assertEquals(71, map.get(7));
+        assertEquals(MISSING, map.get(8));
+        assertTrue(map.containsKey(7));
+        assertEquals(71, map.remove(7));
+        assertEquals(MISSING, map.remove(7));
+        assertFalse(map.containsKey(7));
+        assertTrue(map.isEmpty());
+    }
+
+    // Random puts and removes over a small key range produce long probe runs, so removals
+    // exercise the backward shift
+    @Test
+    void behavesLikeAHashMap() {
+        Random random = new Random(42);
+        IntLongMap map = new IntLongMap(MISSING, 4);
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(4096) - 2048;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(key, MISSING).longValue(), map.remove(key));
+                expected.remove(key);
+            } else {
+                long value = random.nextInt(1_000_000);
+                assertEquals(expected.getOrDefault(key, MISSING).longValue(), map.put(key, value));
+                expected.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -2048; key < 2048; key++) {
+            assertEquals(expected.getOrDefault(key, MISSING).longValue(), map.get(key));
+        }
+        int[] keys = map.keys();
+        long[] values = map.values();
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]).longValue(), values[i]);
+        }
+    }
+
+    @Test
+    void valuesBetweenIsInclusive() {
+        IntLongMap map = new IntLongMap(MISSING);
+        for (int key = 0; key < 100; key++) {
+            map.put(key, key * 10L);
+        }
+        long[] values = map.valuesBetween(10, 12);
+        Arrays.sort(values);
+        assertEquals("[100, 110, 120]", Arrays.toString(values));
+    }
+
+    @Test
+    void copyIsIndependent() {
+        IntLongMap map = new IntLongMap(MISSING);
+        map.put(1, 10);
+        IntLongMap copy = map.copy();
+        map.put(1, 11);
+        map.put(2, 20);
+        assertEquals(10, copy.get(1));
+        assertEquals(1, copy.size());
+    }
+}
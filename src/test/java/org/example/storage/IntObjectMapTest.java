@@ -0,0 +1,50 @@
+package org.example.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IntObjectMapTest {
+    @Test
+    void behavesLikeAHashMap() {
+        Random random = new Random(7);
+        IntObjectMap<String> map = new IntObjectMap<>(4);
+        Map<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(4096) - 2048;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = Integer.toString(random.nextInt(1_000_000));
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -2048; key < 2048; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        List<String> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        List<String> expectedValues = new ArrayList<>(expected.values());
+        Collections.sort(values);
+        Collections.sort(expectedValues);
+        assertEquals(expectedValues, values);
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        map.put(1, "one");
+        map.clear();
+        assertNull(map.get(1));
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.storage;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JSONTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void arrayRoundTrips() {
+        StoreChecks.roundTrip(() -> open("data.json", new StorageOptions()));
+    }
+
+    @Test
+    void jsonLinesRoundTrips() {
+        StoreChecks.roundTrip(() -> open("data.jsonl", new StorageOptions()));
+    }
+
+    @Test
+    void compressedArrayRoundTrips() {
+        StoreChecks.roundTrip(() -> open("data.json", compressed()));
+    }
+
+    @Test
+    void compressedJsonLinesRoundTrips() {
+        StoreChecks.roundTrip(() -> open("data.jsonl", compressed()));
+    }
+
+    @Test
+    void arrayStaysValidJson() throws IOException {
+        JSON<DataModel> store = open("data.json", new StorageOptions());
+        store.createAll(StoreChecks.records(0, 3));
+        store.delete(1);
+        String text = new String(Files.readAllBytes(dir.resolve("data.json")), StandardCharsets.UTF_8).trim();
+        assertTrue(text.startsWith("[") && text.endsWith("]"), text);
+        assertEquals(2, JsonParser.parseString(text).getAsJsonArray().size());
+    }
+
+    @Test
+    void forEachBatchKeepsFileOrder() throws InterruptedException {
+        for (String file : new String[]{"data.json", "data.jsonl"}) {
+            JSON<DataModel> store = open(file, new StorageOptions());
+            store.createAll(StoreChecks.records(0, 2500));
+            List<DataModel> seen = new ArrayList<>();
+            store.forEachBatch(1000, seen::addAll);
+            assertEquals(StoreChecks.keys(StoreChecks.records(0, 2500)), StoreChecks.keys(seen), file);
+        }
+    }
+
+    // A scan that hits a damaged record fails instead of stopping early, so a COPY or EXPORT
+    // cannot report success after reading only part of the file
+    @Test
+    void damagedArrayFailsTheScan() throws IOException {
+        Files.write(dir.resolve("data.json"), "[{\"id\":1,\"name\":\"one\"},{\"id\":2,\"na".getBytes(StandardCharsets.UTF_8));
+        JSON<DataModel> store = open("data.json", new StorageOptions());
+        List<DataModel> seen = new ArrayList<>();
+        assertThrows(JsonParseException.class, () -> store.forEachBatch(1, seen::addAll));
+        assertEquals(List.of("1:one"), StoreChecks.keys(seen));
+    }
+
+    private JSON<DataModel> open(String file, StorageOptions options) {
+        return new JSON<>(dir.resolve(file).toString(), CODEC, options);
+    }
+
+    private static StorageOptions compressed() {
+        StorageOptions options = new StorageOptions();
+        options.setCompressed(true);
+        options.setBlockSize(64);
+        return options;
+    }
+}
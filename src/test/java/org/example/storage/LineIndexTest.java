@@ -0,0 +1,100 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// The sidecar index is only a cache of the data file: whatever state a crash or an outside
+// edit leaves it in, the store must read the data file correctly
+class LineIndexTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenLoadsTheSavedIndex() {
+        open().createAll(StoreChecks.records(0, 50));
+        CSV<DataModel> reopened = open();
+        assertEquals("42:name42", StoreChecks.key(reopened.read(42)));
+        assertNull(reopened.read(50));
+    }
+
+    @Test
+    void lineAppendedBehindTheStoresBackIsFound() throws IOException {
+        CSV<DataModel> store = open();
+        store.createAll(StoreChecks.records(0, 5));
+        append(new DataModel(9, "nine"));
+
+        assertEquals("9:nine", StoreChecks.key(store.read(9)));
+        assertEquals("9:nine", StoreChecks.key(open().read(9)));
+    }
+
+    // A crash after the entries of a commit were appended but before the header was updated
+    // leaves a header describing the old data file
+    @Test
+    void commitInterruptedBeforeTheHeaderIsRebuilt() throws IOException {
+        open().createAll(StoreChecks.records(0, 5));
+        byte[] oldHeader = Arrays.copyOf(Files.readAllBytes(index()), HEADER_SIZE);
+        open().create(new DataModel(5, "five"));
+        byte[] index = Files.readAllBytes(index());
+        System.arraycopy(oldHeader, 0, index, 0, HEADER_SIZE);
+        Files.write(index(), index);
+
+        CSV<DataModel> reopened = open();
+        assertEquals("5:five", StoreChecks.key(reopened.read(5)));
+        assertEquals("0:name0", StoreChecks.key(reopened.read(0)));
+    }
+
+    @Test
+    void truncatedIndexIsRebuilt() throws IOException {
+        open().createAll(StoreChecks.records(0, 5));
+        Files.write(index(), Arrays.copyOf(Files.readAllBytes(index()), 6));
+
+        StoreChecks.assertContents(StoreChecks.sorted(StoreChecks.records(0, 5)), open());
+    }
+
+    @Test
+    void indexWithTheWrongMagicIsRebuilt() throws IOException {
+        open().createAll(StoreChecks.records(0, 5));
+        Files.write(index(), "not an index".getBytes(StandardCharsets.UTF_8));
+
+        StoreChecks.assertContents(StoreChecks.sorted(StoreChecks.records(0, 5)), open());
+    }
+
+    @Test
+    void missingIndexIsRebuilt() throws IOException {
+        open().createAll(StoreChecks.records(0, 5));
+        Files.delete(index());
+
+        StoreChecks.assertContents(StoreChecks.sorted(StoreChecks.records(0, 5)), open());
+    }
+
+    private CSV<DataModel> open() {
+        StorageOptions options = new StorageOptions();
+        options.setIndexed(true);
+        return new CSV<>(dir.resolve("data.csv").toString(), CODEC.csvParser(), CODEC.csvFormatter(), options);
+    }
+
+    private Path index() {
+        return dir.resolve("data.csv.idx");
+    }
+
+    private void append(DataModel record) throws IOException {
+        String line = CODEC.csvFormatter().format(record) + System.lineSeparator();
+        Files.write(dir.resolve("data.csv"), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
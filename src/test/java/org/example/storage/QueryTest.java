@@ -0,0 +1,76 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unknownFieldIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CODEC.query().whereEquals("nmae", "x"));
+        assertThrows(IllegalArgumentException.class, () -> CODEC.query().limit(-1));
+    }
+
+    @Test
+    void filtersAndPagesInOrder() {
+        List<DataModel> records = StoreChecks.records(0, 30);
+        Query<DataModel> query = CODEC.query().wherePrefix("name", "name1").offset(2).limit(3);
+        assertEquals(List.of("11:name11", "12:name12", "13:name13"), StoreChecks.keys(query.apply(records.stream())));
+        assertEquals(List.of("7:name7"), StoreChecks.keys(CODEC.query().whereEquals("id", 7).apply(records.stream())));
+    }
+
+    // Backends that push the id range or paging down must agree with filtering readAll()
+    @Test
+    void everyBackendAgreesWithAFullScan() {
+        StorageOptions indexed = new StorageOptions();
+        indexed.setIndexed(true);
+        Map<String, Supplier<CRUD<DataModel>>> backends = new LinkedHashMap<>();
+        backends.put("csv", () -> new CSV<>(file("data.csv"), CODEC.csvParser(), CODEC.csvFormatter()));
+        backends.put("indexed csv", () -> new CSV<>(file("indexed.csv"), CODEC.csvParser(), CODEC.csvFormatter(), indexed));
+        backends.put("json", () -> new JSON<>(file("data.json"), CODEC));
+        backends.put("jsonl", () -> new JSON<>(file("data.jsonl"), CODEC));
+        backends.put("binary", () -> new BinaryStore<>(file("data.bin"), CODEC.binaryCodec()));
+        backends.put("serialized", () -> new SerializedObject<>(file("data.ser")));
+        backends.put("sharded", () -> new ShardedStore<>(ShardedStore.byRange(40, 80),
+                shard -> new CSV<>(file("shard." + shard + ".csv"), CODEC.csvParser(), CODEC.csvFormatter()), CODEC::idOf));
+
+        List<Query<DataModel>> queries = new ArrayList<>();
+        queries.add(CODEC.query().idBetween(35, 85));
+        queries.add(CODEC.query().idBetween(35, 85).offset(3).limit(10));
+        queries.add(CODEC.query().wherePrefix("name", "name5").limit(4));
+        queries.add(CODEC.query().idBetween(70, 200).whereEquals("name", "name99"));
+        queries.add(CODEC.query().offset(115));
+
+        for (Map.Entry<String, Supplier<CRUD<DataModel>>> backend : backends.entrySet()) {
+            CRUD<DataModel> store = backend.getValue().get();
+            store.createAll(StoreChecks.records(0, 120));
+            store.delete(50);
+            List<DataModel> all = store.readAll();
+            for (Query<DataModel> query : queries) {
+                assertEquals(StoreChecks.sorted(query.apply(all.stream())), StoreChecks.sorted(store.query(query)),
+                        backend.getKey());
+            }
+        }
+    }
+
+    private String file(String name) {
+        return dir.resolve(name).toString();
+    }
+}
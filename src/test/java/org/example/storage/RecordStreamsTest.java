@@ -0,0 +1,55 @@
+package org.example.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordStreamsTest {
+    // A read that fails half way must not look like the end of the data
+    @Test
+    void readFailureIsThrown() {
+        int[] calls = {0};
+        List<Integer> seen = new ArrayList<>();
+        try (Stream<Integer> stream = RecordStreams.of(() -> {
+            if (++calls[0] > 2) {
+                throw new IOException("disk gone");
+            }
+            return calls[0];
+        }, () -> { })) {
+            UncheckedIOException failure = assertThrows(UncheckedIOException.class, () -> stream.forEach(seen::add));
+            assertEquals("disk gone", failure.getCause().getMessage());
+        }
+        assertEquals(List.of(1, 2), seen);
+    }
+
+    @Test
+    void consumerFailureIsNotWrapped() {
+        IllegalArgumentException thrown = new IllegalArgumentException("bad record");
+        try (Stream<Integer> stream = RecordStreams.of(() -> 1, () -> { })) {
+            assertSame(thrown, assertThrows(IllegalArgumentException.class, () -> stream.forEach(value -> {
+                throw thrown;
+            })));
+        }
+    }
+
+    @Test
+    void closeFailureIsThrown() {
+        boolean[] closed = {false};
+        Stream<Integer> stream = RecordStreams.of(() -> null, () -> {
+            closed[0] = true;
+            throw new IOException("close failed");
+        });
+        assertEquals(0, stream.count());
+        assertThrows(UncheckedIOException.class, stream::close);
+        assertTrue(closed[0]);
+    }
+}
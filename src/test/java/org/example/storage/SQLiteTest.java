@@ -0,0 +1,84 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SQLiteTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    private final List<SQLite<DataModel>> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() {
+        for (SQLite<DataModel> store : opened) {
+            store.close();
+        }
+    }
+
+    @Test
+    void roundTrips() {
+        StoreChecks.roundTrip(() -> open(SQLite.DEFAULT_READER_CONNECTIONS));
+    }
+
+    // The duplicate id fails the batch; the caller must hear about it, none of the batch may
+    // stay, and the next batch must not replay the rows bound for the failed one
+    @Test
+    void failedBatchIsRolledBack() {
+        SQLite<DataModel> store = open(SQLite.DEFAULT_READER_CONNECTIONS);
+        store.create(new DataModel(1, "one"));
+        assertThrows(IllegalStateException.class, () -> store.createAll(
+                Arrays.asList(new DataModel(2, "two"), new DataModel(1, "again"), new DataModel(3, "three"))));
+        store.createAll(List.of(new DataModel(4, "four")));
+
+        StoreChecks.assertContents(List.of("1:one", "4:four"), store);
+    }
+
+    @Test
+    void writesAfterCloseFail() {
+        SQLite<DataModel> store = open(SQLite.DEFAULT_READER_CONNECTIONS);
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.create(new DataModel(1, "one")));
+        assertThrows(IllegalStateException.class, () -> store.update(1, new DataModel(1, "one")));
+        assertThrows(IllegalStateException.class, () -> store.delete(1));
+        assertThrows(IllegalStateException.class, () -> store.createAll(List.of(new DataModel(2, "two"))));
+    }
+
+    // Open streams hold their reader; with every pooled reader taken, reads fall back to a
+    // connection of their own instead of waiting for a stream to be closed
+    @Test
+    void readsDoNotWaitForOpenStreams() {
+        SQLite<DataModel> store = open(1);
+        store.createAll(StoreChecks.records(0, 10));
+        try (Stream<DataModel> first = store.stream(2); Stream<DataModel> second = store.stream(2)) {
+            Iterator<DataModel> a = first.iterator();
+            Iterator<DataModel> b = second.iterator();
+            assertEquals("0:name0", StoreChecks.key(a.next()));
+            assertEquals("0:name0", StoreChecks.key(b.next()));
+            assertEquals("7:name7", StoreChecks.key(store.read(7)));
+            assertEquals(10, store.readAll().size());
+        }
+    }
+
+    private SQLite<DataModel> open(int readers) {
+        SQLite<DataModel> store = new SQLite<>(dir.resolve("data.db").toString(), CODEC.sqliteMapper("DataModels"), readers);
+        opened.add(store);
+        return store;
+    }
+}
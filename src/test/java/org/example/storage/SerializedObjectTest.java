@@ -0,0 +1,119 @@
+package org.example.storage;
+
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerializedObjectTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrips() {
+        StoreChecks.roundTrip(() -> new SerializedObject<>(file()));
+    }
+
+    @Test
+    void legacyFileIsConverted() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file()))) {
+            out.writeObject(new DataModel(1, "one"));
+            out.writeObject(new DataModel(2, "two"));
+        }
+
+        SerializedObject<DataModel> store = new SerializedObject<>(file());
+        store.create(new DataModel(3, "three"));
+        StoreChecks.assertContents(List.of("1:one", "2:two", "3:three"), new SerializedObject<DataModel>(file()));
+    }
+
+    // A record that cannot be serialized fails the batch and must not leave part of it behind
+    @Test
+    void failedBatchLeavesNoFrames() throws IOException {
+        SerializedObject<Box> store = new SerializedObject<>(file());
+        store.create(new Box(1, "kept"));
+        long size = Files.size(Path.of(file()));
+
+        assertThrows(UncheckedIOException.class,
+                () -> store.createAll(Arrays.asList(new Box(2, "fine"), new Box(3, new Object()))));
+
+        assertEquals(size, Files.size(Path.of(file())));
+        assertNull(store.read(2));
+        SerializedObject<Box> reopened = new SerializedObject<>(file());
+        assertEquals(1, reopened.readAll().size());
+        assertNull(reopened.read(2));
+        reopened.create(new Box(4, "later"));
+        assertEquals("later", new SerializedObject<Box>(file()).read(4).payload);
+    }
+
+    // A crash during an append can leave a partial frame at the end of the file. Reopening
+    // drops it, and later appends must line up with the frames before it.
+    @Test
+    void tornLastFrameIsCutOff() throws IOException {
+        Path file = Path.of(file());
+        new SerializedObject<DataModel>(file()).createAll(StoreChecks.records(0, 3));
+        long complete = Files.size(file);
+        new SerializedObject<DataModel>(file()).create(new DataModel(3, "three"));
+        long full = Files.size(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // Cut inside the payload, inside the length field and inside the id
+        for (long cut : new long[]{full - 5, complete + 6, complete + 2}) {
+            Files.write(file, Arrays.copyOf(bytes, (int) cut));
+            SerializedObject<DataModel> store = new SerializedObject<>(file());
+            assertEquals(complete, Files.size(file));
+            StoreChecks.assertContents(StoreChecks.sorted(StoreChecks.records(0, 3)), store);
+            store.create(new DataModel(4, "four"));
+            StoreChecks.assertContents(List.of("0:name0", "1:name1", "2:name2", "4:four"), new SerializedObject<DataModel>(file()));
+        }
+    }
+
+    @Test
+    void compactionKeepsTheLatestVersions() throws IOException {
+        SerializedObject<DataModel> store = new SerializedObject<>(file());
+        store.createAll(StoreChecks.records(0, 5));
+        store.update(1, new DataModel(1, "new"));
+        store.delete(2);
+        long before = Files.size(Path.of(file()));
+        store.compact();
+
+        assertTrue(Files.size(Path.of(file())) < before);
+        List<String> expected = List.of("0:name0", "1:new", "3:name3", "4:name4");
+        StoreChecks.assertContents(expected, store);
+        StoreChecks.assertContents(expected, new SerializedObject<DataModel>(file()));
+    }
+
+    private String file() {
+        return dir.resolve("data.ser").toString();
+    }
+
+    static class Box implements Serializable, SerializedObject.Identifiable {
+        private static final long serialVersionUID = 1L;
+
+        final Integer id;
+        final Object payload;
+
+        Box(Integer id, Object payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        @Override
+        public Integer getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedStoreTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrips() {
+        StoreChecks.roundTrip(() -> open("data", ShardedStore.byHash(3)));
+    }
+
+    // Shard files on disk depend on these values; a failure here means existing files would
+    // be read through the wrong shards
+    @Test
+    void hashIsFrozen() {
+        assertEquals(0, ShardedStore.hash(0));
+        assertEquals(-1640503410, ShardedStore.hash(1));
+        assertEquals(1013894940, ShardedStore.hash(2));
+        assertEquals(-1590924515, ShardedStore.hash(12345));
+        assertEquals(1640556431, ShardedStore.hash(-1));
+        assertEquals(-506959985, ShardedStore.hash(Integer.MAX_VALUE));
+        assertEquals("hash-v1:4", ShardedStore.byHash(4).describe());
+    }
+
+    @Test
+    void recordsLandInTheirShard() {
+        ShardedStore<DataModel> store = open("data", ShardedStore.byHash(4));
+        store.createAll(StoreChecks.records(0, 200));
+        List<CRUD<DataModel>> shards = store.getShards();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<DataModel> records = shards.get(shard).readAll();
+            assertFalse(records.isEmpty());
+            for (DataModel record : records) {
+                assertEquals(shard, Math.floorMod(ShardedStore.hash(record.getId()), 4));
+            }
+        }
+    }
+
+    @Test
+    void rangePartitionerSkipsShardsOutsideTheQuery() {
+        ShardedStore.Partitioner partitioner = ShardedStore.byRange(100, 200);
+        assertEquals(3, partitioner.shardCount());
+        assertEquals(0, partitioner.shardOf(-5));
+        assertEquals(1, partitioner.shardOf(100));
+        assertEquals(2, partitioner.shardOf(250));
+        assertFalse(partitioner.mayContain(0, 150, 160));
+        assertTrue(partitioner.mayContain(1, 150, 160));
+        assertEquals("range:100,200", partitioner.describe());
+
+        ShardedStore<DataModel> store = open("data", partitioner);
+        store.createAll(StoreChecks.records(0, 300));
+        List<DataModel> found = store.query(CODEC.query().idBetween(95, 104).limit(8));
+        assertEquals(StoreChecks.keys(StoreChecks.records(95, 103)), StoreChecks.keys(found));
+    }
+
+    @Test
+    void reshardMovesEveryRecord() {
+        ShardedStore<DataModel> source = open("old", ShardedStore.byHash(2));
+        source.createAll(StoreChecks.records(0, 500));
+        ShardedStore<DataModel> target = open("new", ShardedStore.byHash(5));
+        ShardedStore.reshard(source, target);
+
+        StoreChecks.assertContents(StoreChecks.sorted(StoreChecks.records(0, 500)), open("new", ShardedStore.byHash(5)));
+    }
+
+    @Test
+    void metadataRecordsThePartitioner() throws IOException {
+        open("data", ShardedStore.byHash(3)).create(new DataModel(1, "one"));
+        String recorded = new String(Files.readAllBytes(metadata("data")), StandardCharsets.UTF_8).trim();
+        assertEquals("hash-v1:3", recorded);
+
+        assertEquals("1:one", StoreChecks.key(open("data", ShardedStore.byHash(3)).read(1)));
+        assertThrows(IllegalStateException.class, () -> open("data", ShardedStore.byHash(4)));
+        assertThrows(IllegalStateException.class, () -> open("data", ShardedStore.byRange(10, 20)));
+    }
+
+    private ShardedStore<DataModel> open(String name, ShardedStore.Partitioner partitioner) {
+        return new ShardedStore<>(partitioner,
+                shard -> new CSV<>(dir.resolve(name + "." + shard + ".csv").toString(), CODEC.csvParser(), CODEC.csvFormatter()),
+                CODEC::idOf, metadata(name).toString());
+    }
+
+    private Path metadata(String name) {
+        return dir.resolve(name + ".csv.shards");
+    }
+}
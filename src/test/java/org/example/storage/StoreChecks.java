@@ -0,0 +1,72 @@
+package org.example.storage;
+
+import org.example.entity.DataModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Checks shared by the backend tests. open must return a fresh instance over the same files
+// every time, so a second call shows what a restart would read back.
+final class StoreChecks {
+    private StoreChecks() {
+
+    }
+
+    // Every kind of write, then the same contents read back before and after a reopen
+    static void roundTrip(Supplier<? extends CRUD<DataModel>> open) {
+        CRUD<DataModel> store = open.get();
+        store.create(new DataModel(1, "one"));
+        store.createAll(Arrays.asList(new DataModel(2, "two"), new DataModel(3, "three"),
+                new DataModel(4, "four"), new DataModel(5, "five")));
+        store.update(2, new DataModel(2, "TWO"));
+        store.updateAll(Map.of(5, new DataModel(5, "FIVE")));
+        store.delete(3);
+        store.deleteAll(List.of(4));
+
+        List<String> expected = List.of("1:one", "2:TWO", "5:FIVE");
+        assertContents(expected, store);
+        assertContents(expected, open.get());
+    }
+
+    static void assertContents(List<String> expected, CRUD<DataModel> store) {
+        assertEquals(expected, sorted(store.readAll()));
+        for (String entry : expected) {
+            int id = Integer.parseInt(entry.substring(0, entry.indexOf(':')));
+            assertEquals(entry, key(store.read(id)));
+        }
+        assertNull(store.read(-1));
+    }
+
+    static List<String> sorted(List<DataModel> records) {
+        List<String> keys = keys(records);
+        Collections.sort(keys);
+        return keys;
+    }
+
+    static List<String> keys(List<DataModel> records) {
+        List<String> keys = new ArrayList<>(records.size());
+        for (DataModel record : records) {
+            keys.add(key(record));
+        }
+        return keys;
+    }
+
+    static String key(DataModel record) {
+        return record == null ? null : record.getId() + ":" + record.getName();
+    }
+
+    static List<DataModel> records(int fromId, int toId) {
+        List<DataModel> records = new ArrayList<>(toId - fromId);
+        for (int id = fromId; id < toId; id++) {
+            records.add(new DataModel(id, "name" + id));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.storage;
+
+import org.example.codec.CodecRegistry;
+import org.example.codec.EntityCodec;
+import org.example.entity.DataModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+class TXTTest {
+    private static final EntityCodec<DataModel> CODEC = CodecRegistry.codecFor(DataModel.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void plainFileRoundTrips() {
+        StoreChecks.roundTrip(() -> open(new StorageOptions()));
+    }
+
+    @Test
+    void indexedFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setIndexed(true);
+        StoreChecks.roundTrip(() -> open(options));
+    }
+
+    @Test
+    void logStructuredFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setLogStructured(true);
+        StoreChecks.roundTrip(() -> open(options));
+    }
+
+    @Test
+    void compressedFileRoundTrips() {
+        StorageOptions options = new StorageOptions();
+        options.setCompressed(true);
+        options.setBlockSize(64);
+        StoreChecks.roundTrip(() -> open(options));
+    }
+
+    private TXT<DataModel> open(StorageOptions options) {
+        return new TXT<>(dir.resolve("data.txt").toString(), CODEC.textSerializer(), CODEC.textDeserializer(), options);
+    }
+}